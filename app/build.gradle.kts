@@ -34,6 +34,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // TextIndex logs through android.util.Log, which local unit tests only have as a stub
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -48,4 +52,28 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+// Runs ModelProfiler.main on the host JVM, e.g.
+//   ./gradlew :app:profileModels -PtfliteHostJar=<libtensorflowlite_java.jar> \
+//       -PtfliteHostLibDir=<dir of libtensorflowlite_jni> -PprofileArgs="<outputDir> <runs> <model.tflite>..."
+// The tensorflow-lite AAR above only carries Android libraries, so the TFLite Java API and its JNI
+// library must be a host build: bazel build //tensorflow/lite/java:tensorflowlitelib
+// //tensorflow/lite/java:libtensorflowlite_jni.so from the matching TensorFlow release (2.13).
+tasks.register<JavaExec>("profileModels") {
+    group = "application"
+    description = "Profiles .tflite models with ModelProfiler on the host JVM"
+    dependsOn("compileDebugJavaWithJavac")
+    val hostJar = providers.gradleProperty("tfliteHostJar")
+    mainClass.set("com.example.myapplication.ModelProfiler")
+    classpath = files(
+        layout.buildDirectory.dir("intermediates/javac/debug/compileDebugJavaWithJavac/classes"),
+        hostJar.orElse("")
+    )
+    providers.gradleProperty("tfliteHostLibDir").orNull?.let { systemProperty("java.library.path", it) }
+    args(providers.gradleProperty("profileArgs").getOrElse("").split(" ").filter { it.isNotEmpty() })
+    doFirst {
+        if (!hostJar.isPresent) {
+            throw GradleException("profileModels needs -PtfliteHostJar pointing at a host build of the TFLite Java API")
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.myapplication;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the OCR pipeline over many images with a bounded decode-ahead window.
+ *
+ * Results are appended to a binary output file, one record per image. A checkpoint
+ * (next input index, committed output length and the images that failed) is written every
+ * few images so an interrupted job resumes where it stopped instead of starting over; failed
+ * images are retried first on resume. The checkpoint is removed once every image succeeded,
+ * so running the same inputs again starts a fresh job.
+ *
+ * The result sink sees an image only when the checkpoint covering it is written: results are
+ * held back until then, and dropped when the job stops early, because the resumed job
+ * processes those images again.
+ */
+public class BatchOcrJob {
+    private static final String TAG = "BatchOcrJob";
+    private static final int RECORD_MAGIC = 0x4F435231; // "OCR1"
+    private static final int FAILED_MAGIC = 0x4F435246;  // "OCRF"
+
+    public interface Pipeline {
+        List<TextLine> run(Bitmap bitmap) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int done, int total, double imagesPerSec, long etaMs);
+    }
+
+    // Receives each image's lines once, e.g. to feed the text index, in processing order
+    public interface ResultSink {
+        // Called for the images of a checkpoint just before it is written
+        void onResult(int index, String id, List<TextLine> lines) throws IOException;
+
+        // Makes every result delivered so far durable; called before each checkpoint
+        default void sync() throws IOException {
+        }
+    }
+
+    public static class Config {
+        public int inFlight = 4;              // images decoded ahead of the recognizer
+        public int decodeThreads = 2;
+        public int checkpointInterval = 25;   // images between checkpoints
+    }
+
+    private final ContentResolver resolver;
+    private final List<String> inputs;
+    private final File outputFile;
+    private final File checkpointFile;
+    private final Config config;
+    private ResultSink sink;
+    private MemoryBudget memoryBudget;
+    private volatile long lastImageBytes;      // size of the latest decode, to size the prefetch window
+    private volatile boolean cancelled = false;
+
+    private static class PendingResult {
+        final int index;
+        final List<TextLine> lines;
+
+        PendingResult(int index, List<TextLine> lines) {
+            this.index = index;
+            this.lines = lines;
+        }
+    }
+
+    public BatchOcrJob(ContentResolver resolver, List<Uri> uris, File outputFile, Config config) {
+        this(toIds(uris), resolver, outputFile, config);
+    }
+
+    // Inputs given by their uri strings
+    BatchOcrJob(List<String> ids, ContentResolver resolver, File outputFile, Config config) {
+        this.resolver = resolver;
+        this.inputs = new ArrayList<>(ids);
+        this.outputFile = outputFile;
+        this.checkpointFile = new File(outputFile.getPath() + ".ckpt");
+        this.config = config;
+    }
+
+    private static List<String> toIds(List<Uri> uris) {
+        List<String> ids = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            ids.add(uri.toString());
+        }
+        return ids;
+    }
+
+    // All images directly inside the directory, sorted so a resumed run sees the same order
+    public static List<Uri> listImages(File directory) {
+        File[] files = directory.listFiles();
+        List<Uri> uris = new ArrayList<>();
+        if (files == null) return uris;
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".webp"))) {
+                uris.add(Uri.fromFile(file));
+            }
+        }
+        return uris;
+    }
+
+    public void setResultSink(ResultSink sink) {
+        this.sink = sink;
+    }
+
+    // Decodes within the budget and prefetches only as many images as its headroom holds
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Blocks until every input is processed or the job is cancelled
+    public void run(Pipeline pipeline, ProgressListener listener) throws Exception {
+        int total = inputs.size();
+        long inputsHash = inputs.hashCode();
+        Set<Integer> failed = new TreeSet<>();
+        int start = resumeFromCheckpoint(inputsHash, failed);
+        if (start > 0) {
+            Log.i(TAG, "Resuming at image " + start + " of " + total + ", retrying " + failed.size() + " failed images");
+        }
+
+        // Images that failed before are retried ahead of the ones never attempted
+        List<Integer> order = new ArrayList<>(failed);
+        for (int index = start; index < total; index++) {
+            order.add(index);
+        }
+        int alreadyDone = start - failed.size();
+        int next = start;
+
+        ExecutorService decoder = Executors.newFixedThreadPool(Math.max(1, config.decodeThreads));
+        Deque<Future<Bitmap>> window = new ArrayDeque<>();
+        List<PendingResult> uncommitted = new ArrayList<>();
+        int nextToSubmit = 0;
+        long startTime = System.nanoTime();
+        boolean finished = false;
+
+        try (FileOutputStream fileOut = new FileOutputStream(outputFile, true);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+
+            int position = 0;
+            for (; position < order.size() && !cancelled; position++) {
+                int index = order.get(position);
+                // Keep at most inFlight decodes queued ahead of inference, fewer when the budget cannot hold them
+                int limit = memoryBudget != null ? memoryBudget.prefetchWindow(config.inFlight, lastImageBytes) : Math.max(1, config.inFlight);
+                while (nextToSubmit < order.size() && window.size() < limit) {
+                    String id = inputs.get(order.get(nextToSubmit++));
+                    window.addLast(decoder.submit(() -> decode(id)));
+                }
+
+                Bitmap bitmap = null;
+                List<TextLine> lines = null;
+                String error = null;
+                try {
+                    bitmap = window.pollFirst().get();
+                    if (bitmap != null && memoryBudget != null) {
+                        memoryBudget.release(MemoryBudget.PREFETCHED, bitmap.getByteCount());
+                    }
+                    if (bitmap != null) {
+                        lines = pipeline.run(bitmap);
+                    } else {
+                        error = "could not decode";
+                    }
+                } catch (Exception e) {
+                    // A cancelled job leaves the image unrecorded, so the next run simply does it again
+                    if (cancelled) break;
+                    Log.e(TAG, "Image " + index + " failed: " + e.getMessage());
+                    error = e.getClass().getSimpleName() + ": " + e.getMessage();
+                } finally {
+                    if (bitmap != null) bitmap.recycle();
+                }
+
+                if (lines != null) {
+                    writeRecord(out, index, inputs.get(index), lines);
+                    if (sink != null) uncommitted.add(new PendingResult(index, lines));
+                    failed.remove(index);
+                } else {
+                    writeFailure(out, index, inputs.get(index), error);
+                    failed.add(index);
+                }
+                if (index >= next) next = index + 1;
+
+                int done = alreadyDone + position + 1;
+                if ((position + 1) % Math.max(1, config.checkpointInterval) == 0 || position + 1 == order.size()) {
+                    out.flush();
+                    fileOut.getFD().sync();
+                    // A crash between the sink sync and the rename below repeats these images, but a
+                    // cancel never does: results past the last checkpoint are simply never delivered
+                    if (sink != null) {
+                        for (PendingResult result : uncommitted) {
+                            sink.onResult(result.index, inputs.get(result.index), result.lines);
+                        }
+                        sink.sync();
+                    }
+                    uncommitted.clear();
+                    writeCheckpoint(next, outputFile.length(), inputsHash, failed);
+                }
+
+                if (listener != null) {
+                    double elapsedSec = (System.nanoTime() - startTime) / 1e9;
+                    int processed = position + 1;
+                    double rate = elapsedSec > 0 ? processed / elapsedSec : 0;
+                    long etaMs = rate > 0 ? (long) ((order.size() - processed) / rate * 1000) : -1;
+                    listener.onProgress(done, total, rate, etaMs);
+                }
+            }
+            finished = position == order.size();
+        } finally {
+            // Queued decodes never start; running ones are interrupted and finish before release
+            decoder.shutdownNow();
+            try {
+                if (!decoder.awaitTermination(10, TimeUnit.SECONDS)) {
+                    Log.w(TAG, "Prefetch decodes still running after shutdown; their bitmaps are left to the GC");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            releasePrefetched(window);
+        }
+
+        if (finished && failed.isEmpty()) {
+            if (checkpointFile.exists() && !checkpointFile.delete()) {
+                Log.w(TAG, "Could not delete checkpoint " + checkpointFile);
+            }
+        } else if (finished) {
+            Log.w(TAG, failed.size() + " images failed; run the job again to retry them");
+        }
+    }
+
+    // Decodes finished when the job stops early are recycled and their bytes returned to the budget; unstarted ones hold nothing
+    private void releasePrefetched(Deque<Future<Bitmap>> window) {
+        for (Future<Bitmap> pending : window) {
+            if (!pending.isDone() || pending.isCancelled()) continue;
+            try {
+                Bitmap bitmap = pending.get();
+                if (bitmap == null) continue;
+                if (memoryBudget != null) memoryBudget.release(MemoryBudget.PREFETCHED, bitmap.getByteCount());
+                bitmap.recycle();
+            } catch (Exception ignored) {
+                // Failed decodes hold nothing
+            }
+        }
+        window.clear();
+    }
+
+    // Package-private so tests can stand in for the ContentResolver
+    Bitmap decode(String id) throws IOException {
+        Bitmap bitmap;
+        if (memoryBudget != null) {
+            bitmap = memoryBudget.decode(resolver, Uri.parse(id));
+            if (bitmap != null) {
+                memoryBudget.acquire(MemoryBudget.PREFETCHED, bitmap.getByteCount());
+                lastImageBytes = bitmap.getByteCount();
+            }
+        } else {
+            try (InputStream in = resolver.openInputStream(Uri.parse(id))) {
+                bitmap = BitmapFactory.decodeStream(in);
+            }
+        }
+        if (bitmap == null) {
+            Log.w(TAG, "Could not decode " + id);
+        }
+        return bitmap;
+    }
+
+    // Record: magic, index, id, line count, then x1,y1,x2,y2,text for each line
+    private static void writeRecord(DataOutputStream out, int index, String id, List<TextLine> lines) throws IOException {
+        out.writeInt(RECORD_MAGIC);
+        out.writeInt(index);
+        out.writeUTF(id);
+        out.writeInt(lines.size());
+        for (TextLine line : lines) {
+            out.writeInt(line.box.left);
+            out.writeInt(line.box.top);
+            out.writeInt(line.box.right);
+            out.writeInt(line.box.bottom);
+            out.writeUTF(line.text);
+        }
+    }
+
+    // Failure record: magic, index, id, error message
+    private static void writeFailure(DataOutputStream out, int index, String id, String error) throws IOException {
+        out.writeInt(FAILED_MAGIC);
+        out.writeInt(index);
+        out.writeUTF(id);
+        out.writeUTF(error != null ? error : "");
+    }
+
+    public interface RecordVisitor {
+        void onRecord(int index, String id, List<TextLine> lines);
+
+        // A retried image appears again later in the file; the last record for an index wins
+        default void onFailure(int index, String id, String error) {
+        }
+    }
+
+    // Reads back an output file written by run(); stops at the first truncated record
+    public static void readRecords(File file, RecordVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (magic != RECORD_MAGIC && magic != FAILED_MAGIC) {
+                    throw new IOException("Corrupt batch output: bad record magic " + Integer.toHexString(magic));
+                }
+                try {
+                    if (magic == FAILED_MAGIC) {
+                        visitor.onFailure(in.readInt(), in.readUTF(), in.readUTF());
+                        continue;
+                    }
+                    int index = in.readInt();
+                    String id = in.readUTF();
+                    int count = in.readInt();
+                    List<TextLine> lines = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        Rect box = new Rect(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                        lines.add(new TextLine(box, in.readUTF()));
+                    }
+                    visitor.onRecord(index, id, lines);
+                } catch (EOFException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first input index never attempted and fills failed with the images to retry.
+     * Output written after the last checkpoint is truncated away, since those images will be
+     * processed again.
+     */
+    private int resumeFromCheckpoint(long inputsHash, Set<Integer> failed) throws IOException {
+        if (!checkpointFile.exists()) {
+            if (outputFile.exists() && !outputFile.delete()) {
+                throw new IOException("Cannot reset batch output " + outputFile);
+            }
+            return 0;
+        }
+
+        int next = -1;
+        long committedBytes = 0;
+        long savedHash = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+            next = in.readInt();
+            committedBytes = in.readLong();
+            savedHash = in.readLong();
+            int failedCount = in.readInt();
+            for (int i = 0; i < failedCount; i++) {
+                failed.add(in.readInt());
+            }
+        } catch (EOFException e) {
+            next = -1;  // written by an older version
+        }
+
+        if (next < 0 || savedHash != inputsHash || next > inputs.size() || !outputFile.exists() || outputFile.length() < committedBytes) {
+            Log.w(TAG, "Checkpoint does not match this job, starting over");
+            failed.clear();
+            if (!checkpointFile.delete() || (outputFile.exists() && !outputFile.delete())) {
+                throw new IOException("Cannot reset batch output " + outputFile);
+            }
+            return 0;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(outputFile, "rw")) {
+            raf.setLength(committedBytes);
+        }
+        return next;
+    }
+
+    // Written to a temp file and renamed, so a crash never leaves a half-written checkpoint
+    private void writeCheckpoint(int next, long committedBytes, long inputsHash, Set<Integer> failed) throws IOException {
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeInt(next);
+            out.writeLong(committedBytes);
+            out.writeLong(inputsHash);
+            out.writeInt(failed.size());
+            for (int index : failed) {
+                out.writeInt(index);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(checkpointFile)) {
+            throw new IOException("Cannot write checkpoint " + checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coarse-to-fine detection: one low-resolution pass over the whole page finds the text-bearing
+ * regions, and only those regions are re-detected at native resolution.
+ */
+public class CascadeDetector {
+    private static final String TAG = "CascadeDetector";
+
+    public static class Config {
+        // Coarse pass runs with looser thresholds so that small text is not missed
+        public float coarseTextThreshold = 0.5f;
+        public float coarseLinkThreshold = 0.3f;
+        public int padding = 32;               // pixels added around each coarse region
+        public float maxCoverage = 0.6f;       // above this share of the page, run the full pass
+        public int maxRegions = 64;
+    }
+
+    private final TiledDetector fineDetector;
+    private final Config config;
+
+    public CascadeDetector(TiledDetector fineDetector, Config config) {
+        this.fineDetector = fineDetector;
+        this.config = config;
+    }
+
+    // Stops between passes once the budget says so; capture, if not null, records the coarse pass first, then the fine tiles
+    public List<Rect> detect(ImagePlanes image, RunBudget budget, PipelineCapture capture) throws Exception {
+        int imageW = image.width;
+        int imageH = image.height;
+        Rect full = new Rect(0, 0, imageW, imageH);
+
+        List<Rect> coarse = fineDetector.detectSinglePass(image, config.coarseTextThreshold, config.coarseLinkThreshold, capture);
+        if (coarse.isEmpty()) {
+            Log.d(TAG, "Coarse pass found no text");
+            return coarse;
+        }
+        if (budget.shouldStop()) {
+            Log.w(TAG, "Budget stopped detection after the coarse pass");
+            return coarse;
+        }
+
+        List<Rect> regions = expandRegions(coarse, imageW, imageH);
+        long regionArea = 0;
+        int fineTiles = 0;
+        for (Rect region : regions) {
+            regionArea += (long) region.width() * region.height();
+            fineTiles += fineDetector.countTiles(region);
+        }
+        int fullTiles = fineDetector.countTiles(full);
+
+        if (regions.size() > config.maxRegions
+                || regionArea > config.maxCoverage * imageW * (long) imageH
+                || fineTiles >= fullTiles) {
+            Log.d(TAG, "Falling back to full high-res pass: regions=" + regions.size() + ", fineTiles=" + fineTiles + ", fullTiles=" + fullTiles);
+            return fineDetector.detect(image, budget, capture);
+        }
+
+        List<Rect> boxes = new ArrayList<>();
+        for (Rect region : regions) {
+            if (budget.shouldStop()) {
+                Log.w(TAG, "Budget stopped detection before all " + regions.size() + " regions were refined");
+                break;
+            }
+            boxes.addAll(fineDetector.detect(image, region, budget, capture));
+        }
+        Log.d(TAG, "Cascade ran 1 + " + fineTiles + " detector passes instead of " + fullTiles + " over " + regions.size() + " regions");
+
+        // Neighbouring regions may still share a text line at their borders
+        return TiledDetector.mergeBoxes(boxes, 0.5f, Math.max(fineDetector.getTileWidth(), fineDetector.getTileHeight()) / 4);
+    }
+
+    // Pads each coarse box, grows it to at least one detector tile, then merges whatever overlaps
+    private List<Rect> expandRegions(List<Rect> coarse, int imageW, int imageH) {
+        int tileW = Math.min(fineDetector.getTileWidth(), imageW);
+        int tileH = Math.min(fineDetector.getTileHeight(), imageH);
+
+        List<Rect> padded = new ArrayList<>(coarse.size());
+        for (Rect box : coarse) {
+            int left = Math.max(0, box.left - config.padding);
+            int top = Math.max(0, box.top - config.padding);
+            int right = Math.min(imageW, box.right + config.padding);
+            int bottom = Math.min(imageH, box.bottom + config.padding);
+
+            // A region smaller than a tile would be stretched by the detector, so centre a full tile on it
+            if (right - left < tileW) {
+                left = Math.max(0, Math.min(imageW - tileW, (left + right - tileW) / 2));
+                right = left + tileW;
+            }
+            if (bottom - top < tileH) {
+                top = Math.max(0, Math.min(imageH - tileH, (top + bottom - tileH) / 2));
+                bottom = top + tileH;
+            }
+            padded.add(new Rect(left, top, right, bottom));
+        }
+
+        // Merge until stable, since a grown region can start overlapping one it was not compared with
+        List<Rect> regions = padded;
+        int previous;
+        do {
+            previous = regions.size();
+            regions = TiledDetector.mergeBoxes(regions, 0f, Math.max(tileW, tileH));
+        } while (regions.size() < previous && regions.size() > 1);
+        return regions;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cheap check on the source pixels of a detected box, run before any crop bitmap or tensor is
+ * built. Boxes that are too small to read, flat (no ink), have almost no edges (shadows,
+ * smudges) or are rules (table rules, underlines, vertical hairlines) are rejected so the
+ * recognizer never sees them.
+ *
+ * A rule is recognised two ways. A box only a few pixels thick and long is one by shape alone;
+ * aspect ratio on its own is not enough, since a long line of text and a single narrow glyph
+ * such as "I" both have extreme ratios. The detector usually pads a rule to a thicker box, so a
+ * long box is also a rule when almost all of its edges run along its length: a rule has no
+ * strokes across it, text always does.
+ */
+public class CropPrefilter {
+
+    public static class Config {
+        public float minVariance = 60f;        // luminance variance, 0..255 scale
+        public float minEdgeDensity = 0.03f;   // share of sampled neighbour pairs that differ strongly
+        public int edgeThreshold = 32;         // luminance step that counts as an edge
+        public int minSide = 5;                // boxes smaller than this either way are dropped
+        public int maxRuleThickness = 3;       // a box this thin or thinner can only be a rule...
+        public float minRuleLength = 8f;       // ...once it is this many times longer than thick
+        public float maxRuleCrossEdges = 0.1f; // a long box whose cross-length edges are below this share of its lengthwise ones is a rule
+        public int maxSamples = 4096;          // pixels sampled per box, spread on a grid
+    }
+
+    private final Config config;
+    private final AtomicInteger checked = new AtomicInteger();
+    private final AtomicInteger rejectedSmall = new AtomicInteger();
+    private final AtomicInteger rejectedRule = new AtomicInteger();
+    private final AtomicInteger rejectedVariance = new AtomicInteger();
+    private final AtomicInteger rejectedEdges = new AtomicInteger();
+
+    public CropPrefilter(Config config) {
+        this.config = config;
+    }
+
+    // Counts of one run, by reason
+    public static class Stats {
+        public final int checked;
+        public final int small;
+        public final int rule;
+        public final int variance;
+        public final int edges;
+
+        Stats(int checked, int small, int rule, int variance, int edges) {
+            this.checked = checked;
+            this.small = small;
+            this.rule = rule;
+            this.variance = variance;
+            this.edges = edges;
+        }
+
+        public int skipped() {
+            return small + rule + variance + edges;
+        }
+    }
+
+    // Reads the request's luminance plane, so no pixels are copied out of the bitmap
+    public boolean accept(ImagePlanes source, Rect box) {
+        return accept(source, box.left, box.top, box.right, box.bottom);
+    }
+
+    public boolean accept(ImagePlanes source, int left, int top, int right, int bottom) {
+        checked.incrementAndGet();
+        int w = right - left;
+        int h = bottom - top;
+        if (w < config.minSide || h < config.minSide) {
+            rejectedSmall.incrementAndGet();
+            return false;
+        }
+
+        int thickness = Math.min(w, h);
+        boolean elongated = Math.max(w, h) >= thickness * config.minRuleLength;
+        if (thickness <= config.maxRuleThickness && elongated) {
+            rejectedRule.incrementAndGet();
+            return false;
+        }
+
+        // Sample on a regular grid so cost is bounded regardless of box size
+        int step = Math.max(1, (int) Math.ceil(Math.sqrt(w * (double) h / config.maxSamples)));
+        int cols = (w + step - 1) / step;
+        int[] prevLum = new int[cols];
+        int[] lum = new int[cols];
+
+        long sum = 0;
+        long sumSq = 0;
+        int samples = 0;
+        int rowEdges = 0;       // between horizontal neighbours, i.e. across vertical strokes
+        int columnEdges = 0;    // between vertical neighbours, i.e. across horizontal strokes
+        int pairs = 0;
+
+        for (int y = top, r = 0; y < bottom; y += step, r++) {
+            for (int c = 0; c < cols; c++) {
+                int l = source.getLuma(left + c * step, y);
+                lum[c] = l;
+                sum += l;
+                sumSq += l * l;
+                samples++;
+
+                if (c > 0) {
+                    pairs++;
+                    if (Math.abs(l - lum[c - 1]) >= config.edgeThreshold) rowEdges++;
+                }
+                if (r > 0) {
+                    pairs++;
+                    if (Math.abs(l - prevLum[c]) >= config.edgeThreshold) columnEdges++;
+                }
+            }
+            int[] swap = prevLum;
+            prevLum = lum;
+            lum = swap;
+        }
+
+        double mean = sum / (double) samples;
+        double variance = sumSq / (double) samples - mean * mean;
+        if (variance < config.minVariance) {
+            rejectedVariance.incrementAndGet();
+            return false;
+        }
+
+        int edges = rowEdges + columnEdges;
+        if (pairs > 0 && edges / (float) pairs < config.minEdgeDensity) {
+            rejectedEdges.incrementAndGet();
+            return false;
+        }
+
+        if (elongated) {
+            int along = w >= h ? columnEdges : rowEdges;
+            int across = w >= h ? rowEdges : columnEdges;
+            if (across < along * config.maxRuleCrossEdges) {
+                rejectedRule.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Counts restart here, so statsReport describes a single pipeline run
+    public void beginRun() {
+        checked.set(0);
+        rejectedSmall.set(0);
+        rejectedRule.set(0);
+        rejectedVariance.set(0);
+        rejectedEdges.set(0);
+    }
+
+    public int getChecked() {
+        return checked.get();
+    }
+
+    public int getSkipped() {
+        return rejectedSmall.get() + rejectedRule.get() + rejectedVariance.get() + rejectedEdges.get();
+    }
+
+    // Since the last beginRun
+    public Stats getStats() {
+        return new Stats(checked.get(), rejectedSmall.get(), rejectedRule.get(), rejectedVariance.get(), rejectedEdges.get());
+    }
+
+    public String statsReport() {
+        Stats stats = getStats();
+        return String.format(Locale.ROOT, "this run: checked=%d skipped=%d (small=%d, rule=%d, variance=%d, edges=%d)",
+                stats.checked, stats.skipped(), stats.small, stats.rule, stats.variance, stats.edges);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reuses detection and recognition across a stream of frames from a nearly still camera.
+ *
+ * Each frame is reduced to a small luminance image and aligned against the previous one to
+ * estimate global motion. While the motion stays small and the aligned frames still match,
+ * the previous boxes are shifted by the motion and their text is kept; a box is re-recognized
+ * only when the pixels under it changed. The full detector runs every K frames, on large
+ * motion, or when the scene no longer matches.
+ *
+ * Frames arrive as the request's ImagePlanes, so the small image is a resample of the same
+ * luminance plane the detector and recognizer read. A frame whose budget runs out keeps the
+ * text it already has, and the next frame re-detects.
+ */
+public class FrameTracker {
+    private static final String TAG = "FrameTracker";
+    private static final int SIGNATURE_W = 16;
+    private static final int SIGNATURE_H = 4;
+
+    public static class Config {
+        public int downsampleWidth = 160;
+        public int searchRadius = 4;              // in downsampled pixels
+        public float maxMotion = 48f;             // full-res pixels per frame before re-detecting
+        public float sceneChangeThreshold = 14f;  // mean abs luminance difference after alignment
+        public float regionChangeThreshold = 18f; // mean abs difference of a box signature
+        public int redetectInterval = 15;         // frames between forced detector runs
+    }
+
+    public interface FullPipeline {
+        List<TextLine> run(ImagePlanes frame, RunBudget budget) throws Exception;
+    }
+
+    public interface RegionRecognizer {
+        String recognize(ImagePlanes frame, Rect box) throws Exception;
+    }
+
+    public static class Stats {
+        public int frames;
+        public int detections;
+        public int reusedBoxes;
+        public int rerecognizedBoxes;
+    }
+
+    private static class Track {
+        float left, top, right, bottom;
+        String text;
+        int[] signature;
+    }
+
+    private final Config config;
+    private final FullPipeline pipeline;
+    private final RegionRecognizer recognizer;
+    private final Stats stats = new Stats();
+
+    private int[] previous;
+    private int smallW;
+    private int smallH;
+    private float scale;  // full-res pixels per downsampled pixel
+    private int framesSinceDetection;
+    private List<Track> tracks = new ArrayList<>();
+
+    public FrameTracker(Config config, FullPipeline pipeline, RegionRecognizer recognizer) {
+        this.config = config;
+        this.pipeline = pipeline;
+        this.recognizer = recognizer;
+    }
+
+    public synchronized List<TextLine> process(ImagePlanes frame, RunBudget budget) throws Exception {
+        stats.frames++;
+        int[] current = downsample(frame);
+
+        boolean redetect = previous == null || framesSinceDetection >= config.redetectInterval;
+        float dx = 0, dy = 0;
+        if (!redetect) {
+            float[] motion = estimateMotion(previous, current);
+            dx = motion[0] * scale;
+            dy = motion[1] * scale;
+            redetect = Math.hypot(dx, dy) > config.maxMotion || motion[2] > config.sceneChangeThreshold;
+            if (redetect) {
+                Log.d(TAG, String.format("Re-detecting: motion=(%.1f,%.1f) residual=%.1f", dx, dy, motion[2]));
+            }
+        }
+        previous = current;
+
+        if (redetect) {
+            return detect(frame, current, budget);
+        }
+
+        framesSinceDetection++;
+        List<TextLine> lines = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            track.left += dx;
+            track.right += dx;
+            track.top += dy;
+            track.bottom += dy;
+
+            Rect box = clamp(track, frame.width, frame.height);
+            if (box == null) continue;  // moved out of the frame
+
+            int[] signature = signature(current, box);
+            if (meanAbsDiff(signature, track.signature) > config.regionChangeThreshold) {
+                if (budget.shouldStop()) {
+                    // Stale text for now; the signature is kept so the box is retried next frame
+                    budget.markSkipped(1);
+                    lines.add(new TextLine(box, track.text));
+                    continue;
+                }
+                track.text = recognizer.recognize(frame, box);
+                track.signature = signature;
+                stats.rerecognizedBoxes++;
+            } else {
+                stats.reusedBoxes++;
+            }
+            lines.add(new TextLine(box, track.text));
+        }
+        return lines;
+    }
+
+    // Forces the next frame through the full detector
+    public synchronized void reset() {
+        previous = null;
+        tracks = new ArrayList<>();
+    }
+
+    public synchronized Stats getStats() {
+        Stats copy = new Stats();
+        copy.frames = stats.frames;
+        copy.detections = stats.detections;
+        copy.reusedBoxes = stats.reusedBoxes;
+        copy.rerecognizedBoxes = stats.rerecognizedBoxes;
+        return copy;
+    }
+
+    private List<TextLine> detect(ImagePlanes frame, int[] small, RunBudget budget) throws Exception {
+        stats.detections++;
+        List<TextLine> lines = pipeline.run(frame, budget);
+        // A cut-off run found only part of the boxes, so they are not tracked for long
+        framesSinceDetection = budget.isPartial() || budget.shouldStop() ? config.redetectInterval : 0;
+        List<Track> updated = new ArrayList<>(lines.size());
+        for (TextLine line : lines) {
+            Track track = new Track();
+            track.left = line.box.left;
+            track.top = line.box.top;
+            track.right = line.box.right;
+            track.bottom = line.box.bottom;
+            track.text = line.text;
+            track.signature = signature(small, line.box);
+            updated.add(track);
+        }
+        tracks = updated;
+        return lines;
+    }
+
+    private int[] downsample(ImagePlanes frame) {
+        int w = Math.min(config.downsampleWidth, frame.width);
+        int h = Math.max(1, Math.round(frame.height * (w / (float) frame.width)));
+        if (w != smallW || h != smallH) {
+            // Resolution changed: the previous frame cannot be compared
+            previous = null;
+            smallW = w;
+            smallH = h;
+        }
+        scale = frame.width / (float) w;
+
+        ImagePlanes small = frame.resample(0, 0, frame.width, frame.height, w, h, false);
+        int[] pixels = new int[w * h];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = small.luma[i] & 0xFF;
+        }
+        return pixels;
+    }
+
+    /**
+     * Exhaustive integer-shift search minimising the mean absolute difference, refined to
+     * sub-pixel with a parabola through the neighbouring costs. Returns {dx, dy, residual}.
+     */
+    private float[] estimateMotion(int[] prev, int[] cur) {
+        int r = config.searchRadius;
+        int size = 2 * r + 1;
+        float[] costs = new float[size * size];
+        int bestX = 0, bestY = 0;
+        float best = Float.MAX_VALUE;
+
+        for (int sy = -r; sy <= r; sy++) {
+            for (int sx = -r; sx <= r; sx++) {
+                float cost = shiftedDiff(prev, cur, sx, sy);
+                costs[(sy + r) * size + (sx + r)] = cost;
+                if (cost < best) {
+                    best = cost;
+                    bestX = sx;
+                    bestY = sy;
+                }
+            }
+        }
+
+        float subX = bestX, subY = bestY;
+        if (bestX > -r && bestX < r) {
+            subX += parabolaOffset(costs[(bestY + r) * size + bestX + r - 1], best, costs[(bestY + r) * size + bestX + r + 1]);
+        }
+        if (bestY > -r && bestY < r) {
+            subY += parabolaOffset(costs[(bestY + r - 1) * size + bestX + r], best, costs[(bestY + r + 1) * size + bestX + r]);
+        }
+        return new float[]{subX, subY, best};
+    }
+
+    private static float parabolaOffset(float left, float center, float right) {
+        float denominator = left - 2 * center + right;
+        return denominator > 0 ? 0.5f * (left - right) / denominator : 0f;
+    }
+
+    // Mean abs difference between cur(x, y) and prev(x - sx, y - sy) over the overlap
+    private float shiftedDiff(int[] prev, int[] cur, int sx, int sy) {
+        long sum = 0;
+        int count = 0;
+        for (int y = Math.max(0, sy); y < Math.min(smallH, smallH + sy); y++) {
+            int curRow = y * smallW;
+            int prevRow = (y - sy) * smallW;
+            for (int x = Math.max(0, sx); x < Math.min(smallW, smallW + sx); x++) {
+                sum += Math.abs(cur[curRow + x] - prev[prevRow + x - sx]);
+                count++;
+            }
+        }
+        return count > 0 ? sum / (float) count : Float.MAX_VALUE;
+    }
+
+    // Coarse luminance thumbnail of a full-res box, sampled from the downsampled frame
+    private int[] signature(int[] small, Rect box) {
+        int[] sig = new int[SIGNATURE_W * SIGNATURE_H];
+        float left = box.left / scale;
+        float top = box.top / scale;
+        float cellW = Math.max(1f, box.width() / scale) / SIGNATURE_W;
+        float cellH = Math.max(1f, box.height() / scale) / SIGNATURE_H;
+        for (int j = 0; j < SIGNATURE_H; j++) {
+            int y = Math.min(smallH - 1, Math.max(0, (int) (top + (j + 0.5f) * cellH)));
+            for (int i = 0; i < SIGNATURE_W; i++) {
+                int x = Math.min(smallW - 1, Math.max(0, (int) (left + (i + 0.5f) * cellW)));
+                sig[j * SIGNATURE_W + i] = small[y * smallW + x];
+            }
+        }
+        return sig;
+    }
+
+    private static float meanAbsDiff(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) sum += Math.abs(a[i] - b[i]);
+        return sum / (float) a.length;
+    }
+
+    private static Rect clamp(Track track, int width, int height) {
+        int left = Math.max(0, Math.round(track.left));
+        int top = Math.max(0, Math.round(track.top));
+        int right = Math.min(width, Math.round(track.right));
+        int bottom = Math.min(height, Math.round(track.bottom));
+        if (right - left < 2 || bottom - top < 2) return null;
+        return new Rect(left, top, right, bottom);
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.myapplication;
+
+/**
+ * Planar 8-bit copy of one image: R, G, B and luminance planes, row-major, one byte per pixel
+ * each. OcrEngine builds it once per request and every stage samples from it (detector input,
+ * tiles, crop prefilter, recognizer crops) instead of pulling ARGB pixels out of a bitmap and
+ * converting them again. Luminance always uses {@link #luminance}, so the detector and the
+ * recognizer see the same gray value for a pixel.
+ *
+ * Resampled copies carry either the RGB planes or only the luminance plane, whichever the
+ * consuming model needs. Nothing here touches Android, so PipelineReplay can use it too.
+ */
+public final class ImagePlanes {
+    public final int width;
+    public final int height;
+    // null when the copy was resampled without them
+    final byte[] r;
+    final byte[] g;
+    final byte[] b;
+    final byte[] luma;
+    // Built on first use by a resample that shrinks by at least 2x
+    private ImagePlanes half;
+
+    ImagePlanes(int width, int height, boolean rgb, boolean luminance) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        this.r = rgb ? new byte[size] : null;
+        this.g = rgb ? new byte[size] : null;
+        this.b = rgb ? new byte[size] : null;
+        this.luma = luminance ? new byte[size] : null;
+    }
+
+    // BT.601 weights in 8-bit fixed point; a gray pixel maps to itself
+    public static int luminance(int r, int g, int b) {
+        return (77 * r + 150 * g + 29 * b + 128) >> 8;
+    }
+
+    public static ImagePlanes fromArgb(int[] pixels, int width, int height) {
+        ImagePlanes planes = new ImagePlanes(width, height, true, true);
+        planes.setRows(pixels, 0, height);
+        return planes;
+    }
+
+    // Solid black, for warm-up runs
+    public static ImagePlanes blank(int width, int height) {
+        return new ImagePlanes(width, height, true, true);
+    }
+
+    // Rows [y0, y0 + rows) from packed ARGB pixels, which start at row y0
+    void setRows(int[] argb, int y0, int rows) {
+        int offset = y0 * width;
+        int count = rows * width;
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            int red = (pixel >> 16) & 0xFF;
+            int green = (pixel >> 8) & 0xFF;
+            int blue = pixel & 0xFF;
+            int index = offset + i;
+            if (r != null) {
+                r[index] = (byte) red;
+                g[index] = (byte) green;
+                b[index] = (byte) blue;
+            }
+            if (luma != null) luma[index] = (byte) luminance(red, green, blue);
+        }
+    }
+
+    public boolean hasRgb() {
+        return r != null;
+    }
+
+    public int getLuma(int x, int y) {
+        return luma[y * width + x] & 0xFF;
+    }
+
+    // Packed opaque ARGB; a luminance-only copy comes out as gray
+    public int[] toArgb() {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int red, green, blue;
+            if (r != null) {
+                red = r[i] & 0xFF;
+                green = g[i] & 0xFF;
+                blue = b[i] & 0xFF;
+            } else {
+                red = green = blue = luma[i] & 0xFF;
+            }
+            pixels[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+        }
+        return pixels;
+    }
+
+    // The planes of this copy, without the half-resolution level
+    public long byteCount() {
+        long planeBytes = (long) width * height;
+        return planeBytes * ((r != null ? 3 : 0) + (luma != null ? 1 : 0));
+    }
+
+    // What half() allocates, whether or not it has been built yet
+    public long halfByteCount() {
+        long planeBytes = (long) Math.max(1, width / 2) * Math.max(1, height / 2);
+        return planeBytes * ((r != null ? 3 : 0) + (luma != null ? 1 : 0));
+    }
+
+    /**
+     * Bilinearly resamples the region [left, left + w) x [top, top + h) to dstW x dstH. Large
+     * reductions read from the half-resolution level so a page is not point-sampled down to the
+     * detector size. rgb selects the R, G, B planes, otherwise only luminance is produced.
+     */
+    public ImagePlanes resample(int left, int top, int w, int h, int dstW, int dstH, boolean rgb) {
+        if (rgb && r == null) {
+            throw new IllegalStateException("No RGB planes to resample");
+        }
+        ImagePlanes source = this;
+        float levelScale = 1f;
+        if (w >= 2 * dstW && h >= 2 * dstH && width >= 2 && height >= 2) {
+            source = half();
+            levelScale = 0.5f;
+        }
+
+        int minX = Math.min(source.width - 1, (int) (left * levelScale));
+        int maxX = Math.max(minX, Math.min(source.width - 1, (int) Math.ceil((left + w) * levelScale) - 1));
+        int minY = Math.min(source.height - 1, (int) (top * levelScale));
+        int maxY = Math.max(minY, Math.min(source.height - 1, (int) Math.ceil((top + h) * levelScale) - 1));
+
+        // Pixel-centre mapping with 8-bit fractional weights
+        int[] x0 = new int[dstW];
+        int[] x1 = new int[dstW];
+        int[] fx = new int[dstW];
+        for (int x = 0; x < dstW; x++) {
+            float sx = (left + (x + 0.5f) * w / dstW) * levelScale - 0.5f;
+            sx = Math.max(minX, Math.min(maxX, sx));
+            x0[x] = (int) sx;
+            x1[x] = Math.min(maxX, x0[x] + 1);
+            fx[x] = (int) ((sx - x0[x]) * 256);
+        }
+
+        ImagePlanes out = new ImagePlanes(dstW, dstH, rgb, !rgb);
+        for (int y = 0; y < dstH; y++) {
+            float sy = (top + (y + 0.5f) * h / dstH) * levelScale - 0.5f;
+            sy = Math.max(minY, Math.min(maxY, sy));
+            int y0 = (int) sy;
+            int y1 = Math.min(maxY, y0 + 1);
+            int fy = (int) ((sy - y0) * 256);
+            int row0 = y0 * source.width;
+            int row1 = y1 * source.width;
+            int outRow = y * dstW;
+            if (rgb) {
+                resampleRow(source.r, out.r, row0, row1, fy, x0, x1, fx, outRow);
+                resampleRow(source.g, out.g, row0, row1, fy, x0, x1, fx, outRow);
+                resampleRow(source.b, out.b, row0, row1, fy, x0, x1, fx, outRow);
+            } else {
+                resampleRow(source.luma, out.luma, row0, row1, fy, x0, x1, fx, outRow);
+            }
+        }
+        return out;
+    }
+
+    private static void resampleRow(byte[] src, byte[] dst, int row0, int row1, int fy,
+                                     int[] x0, int[] x1, int[] fx, int outRow) {
+        for (int x = 0; x < x0.length; x++) {
+            int wx = fx[x];
+            int top = (src[row0 + x0[x]] & 0xFF) * (256 - wx) + (src[row0 + x1[x]] & 0xFF) * wx;
+            int bottom = (src[row1 + x0[x]] & 0xFF) * (256 - wx) + (src[row1 + x1[x]] & 0xFF) * wx;
+            dst[outRow + x] = (byte) ((top * (256 - fy) + bottom * fy + 32768) >> 16);
+        }
+    }
+
+    // 2x2 box average of every plane this copy has
+    synchronized ImagePlanes half() {
+        if (half == null) {
+            int hw = Math.max(1, width / 2);
+            int hh = Math.max(1, height / 2);
+            ImagePlanes level = new ImagePlanes(hw, hh, r != null, luma != null);
+            for (int y = 0; y < hh; y++) {
+                int row0 = (2 * y) * width;
+                int row1 = Math.min(height - 1, 2 * y + 1) * width;
+                for (int x = 0; x < hw; x++) {
+                    int xa = 2 * x;
+                    int xb = Math.min(width - 1, xa + 1);
+                    int index = y * hw + x;
+                    if (r != null) {
+                        level.r[index] = average(r, row0, row1, xa, xb);
+                        level.g[index] = average(g, row0, row1, xa, xb);
+                        level.b[index] = average(b, row0, row1, xa, xb);
+                    }
+                    if (luma != null) level.luma[index] = average(luma, row0, row1, xa, xb);
+                }
+            }
+            half = level;
+        }
+        return half;
+    }
+
+    private static byte average(byte[] plane, int row0, int row1, int xa, int xb) {
+        int sum = (plane[row0 + xa] & 0xFF) + (plane[row0 + xb] & 0xFF) + (plane[row1 + xa] & 0xFF) + (plane[row1 + xb] & 0xFF);
+        return (byte) ((sum + 2) >> 2);
+    }
+}
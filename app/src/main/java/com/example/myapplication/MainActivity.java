@@ -2,17 +2,11 @@ package com.example.myapplication;
 
 import android.Manifest;
 import android.app.ProgressDialog;
-import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.content.res.AssetFileDescriptor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.Toast;
@@ -20,55 +14,23 @@ import android.widget.Toast;
 import androidx.activity.EdgeToEdge;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import org.tensorflow.lite.Interpreter;
-
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
 
 public class MainActivity extends AppCompatActivity {
 
-    private Interpreter recognizer;
-    private Interpreter detector;
+    private OcrEngine engine;
     private ProgressDialog progressDialog;
 
-    int MAX_CHAR_LEN = 32;
-    int NUM_CLASSES = 80;
-
-    private final String[] alphabet = {
-            "0","1","2","3","4","5","6","7","8","9",
-            "A","B","C","D","E","F","G","H","I","J",
-            "K","L","M","N","O","P","Q","R","S","T",
-            "U","V","W","X","Y","Z",
-            "a","b","c","d","e","f","g","h","i","j",
-            "k","l","m","n","o","p","q","r","s","t",
-            "u","v","w","x","y","z",
-            ".",",","-"," ","/","_"
-    };
-
     private final ActivityResultLauncher<Intent> imagePickerLauncher =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                    Uri imageUri = result.getData().getData();
-                    try {
-                        InputStream inputStream = getContentResolver().openInputStream(imageUri);
-                        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                        processImage(bitmap);
-                    } catch (FileNotFoundException e) {
-                        showToast("Image not found");
-                        Log.e("BITMAP_LOAD_ERROR", e.getMessage());
-                    }
+                    processImage(result.getData().getData());
                 }
             });
 
@@ -79,10 +41,11 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         Button button = findViewById(R.id.button);
 
-        detector = loadModelFile(this, "EasyOCR_EasyOCRDetector.tflite");
-        recognizer = loadModelFile(this, "EasyOCR_EasyOCRRecognizer.tflite");
-
-        if (detector == null || recognizer == null) {
+        // Shares models, labels and the OCR worker with every other screen
+        try {
+            engine = OcrEngine.get(this);
+        } catch (IOException e) {
+            Log.e("MODEL_LOAD_ERROR", e.getMessage());
             showToast("Failed to load models.");
             return;
         }
@@ -114,145 +77,27 @@ public class MainActivity extends AppCompatActivity {
         imagePickerLauncher.launch(intent);
     }
 
-    private Interpreter loadModelFile(Context context, String modelName) {
-        try {
-            AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelName);
-            FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-            FileChannel fileChannel = inputStream.getChannel();
-            long startOffset = fileDescriptor.getStartOffset();
-            long declaredLength = fileDescriptor.getDeclaredLength();
-            MappedByteBuffer modelBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-            return new Interpreter(modelBuffer);
-        } catch (Exception e) {
-            Log.e("MODEL_LOAD_ERROR", e.getMessage());
-            return null;
-        }
-    }
-
-    private ByteBuffer preprocessImage(Bitmap bitmap, int width, int height, int channels) {
-        Bitmap resized = Bitmap.createScaledBitmap(bitmap, width, height, true);
-        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * width * height * channels);
-        buffer.order(ByteOrder.nativeOrder());
-
-        int[] pixels = new int[width * height];
-        resized.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        for (int pixel : pixels) {
-            if (channels == 1) {
-                float r = ((pixel >> 16) & 0xFF) / 255.0f;
-                float g = ((pixel >> 8) & 0xFF) / 255.0f;
-                float b = (pixel & 0xFF) / 255.0f;
-                float gray = (r + g + b) / 3.0f;
-                buffer.putFloat(gray);
-            } else {
-                buffer.putFloat(((pixel >> 16) & 0xFF) / 255.0f); // R
-                buffer.putFloat(((pixel >> 8) & 0xFF) / 255.0f);  // G
-                buffer.putFloat((pixel & 0xFF) / 255.0f);         // B
-            }
-        }
-
-        return buffer;
-    }
-
-    private void processImage(Bitmap bitmap) {
+    private void processImage(Uri imageUri) {
         progressDialog = ProgressDialog.show(this, "Processing", "Running detection...", true);
-        new Thread(() -> {
-            try {
-                // Get detector input shape
-                int[] detectorShape = detector.getInputTensor(0).shape(); // [1, H, W, C]
-                int detHeight = detectorShape[1];
-                int detWidth = detectorShape[2];
-                int detChannels = detectorShape[3];
-
-                ByteBuffer detectorInput = preprocessImage(bitmap, detWidth, detHeight, detChannels);
-                float[][][][] detectorOutput = new float[1][detector.getOutputTensor(0).shape()[1]][detector.getOutputTensor(0).shape()[2]][detector.getOutputTensor(0).shape()[3]];
-
-                detector.run(detectorInput, detectorOutput);
-                Log.d("DETECTOR_OUTPUT", Arrays.deepToString(detectorOutput));
-
-                // Dummy crop for now
-                int boxWidth = bitmap.getWidth() / 2;
-                int boxHeight = bitmap.getHeight() / 4;
-                int x = (bitmap.getWidth() - boxWidth) / 2;
-                int y = (bitmap.getHeight() - boxHeight) / 2;
-                Rect dummyBox = new Rect(x, y, x + boxWidth, y + boxHeight);
-                Bitmap cropped = safeCrop(bitmap, dummyBox);
-
-                if (cropped == null) {
-                    runOnUiThread(() -> showToast("Invalid bounding box, skipping."));
-                    return;
-                }
-
-                // Get recognizer input shape
-                int[] recShape = recognizer.getInputTensor(0).shape(); // [1, H, W, C]
-                int recHeight = recShape[1];
-                int recWidth = recShape[2];
-                int recChannels = recShape[3];
-
-                ByteBuffer recognizerInput = preprocessImage(cropped, recWidth, recHeight, recChannels);
-                // Get the correct output shape from the model
-                int[] outputShape = recognizer.getOutputTensor(0).shape(); // e.g. [1, 249, 97]
-                int outputTimeSteps = outputShape[1];
-                int outputClasses = outputShape[2];
-
-                // Create array dynamically
-                float[][][] recognizerOutput = new float[1][outputTimeSteps][outputClasses];
-                recognizer.run(recognizerInput, recognizerOutput);
-
-                Log.d("RECOGNIZER_OUTPUT", Arrays.deepToString(recognizerOutput));
-
-                // Decode
-                String recognizedText = decodeRecognizerOutput(recognizerOutput[0], alphabet);
-
-                runOnUiThread(() -> {
-                    progressDialog.dismiss();
-                    showToast("Detected Text: " + recognizedText);
-                    Log.d("RECOGNIZED_TEXT", recognizedText);
-                });
-
-            } catch (Exception e) {
-                Log.e("PROCESS_ERROR", e.toString());
-                runOnUiThread(() -> {
-                    progressDialog.dismiss();
-                    showToast("Error: " + e.getMessage());
-                });
+        engine.recognize(imageUri, OcrExecutor.Priority.INTERACTIVE, null).whenComplete((lines, error) -> runOnUiThread(() -> {
+            progressDialog.dismiss();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                Log.e("PROCESS_ERROR", cause.toString());
+                showToast("Error: " + cause.getMessage());
+                return;
             }
-        }).start();
-    }
-
-    private Bitmap safeCrop(Bitmap bitmap, Rect box) {
-        int x = Math.max(0, box.left);
-        int y = Math.max(0, box.top);
-        int right = Math.min(box.right, bitmap.getWidth());
-        int bottom = Math.min(box.bottom, bitmap.getHeight());
-
-        int width = right - x;
-        int height = bottom - y;
-
-        if (width <= 0 || height <= 0) {
-            Log.e("CROP_ERROR", "Invalid crop region: width=" + width + ", height=" + height);
-            return null;
-        }
-
-        return Bitmap.createBitmap(bitmap, x, y, width, height);
+            String recognizedText = joinLines(lines);
+            showToast("Detected Text: " + recognizedText);
+            Log.d("RECOGNIZED_TEXT", recognizedText);
+        }));
     }
 
-    private String decodeRecognizerOutput(float[][] output, String[] alphabet) {
+    private static String joinLines(List<TextLine> lines) {
         StringBuilder result = new StringBuilder();
-        int lastIndex = -1;
-        for (float[] timestep : output) {
-            int maxIdx = 0;
-            float maxVal = timestep[0];
-            for (int i = 1; i < timestep.length; i++) {
-                if (timestep[i] > maxVal) {
-                    maxVal = timestep[i];
-                    maxIdx = i;
-                }
-            }
-            if (maxIdx != lastIndex && maxIdx < alphabet.length) {
-                result.append(alphabet[maxIdx]);
-                lastIndex = maxIdx;
-            }
+        for (TextLine line : lines) {
+            if (result.length() > 0) result.append('\n');
+            result.append(line.text);
         }
         return result.toString();
     }
@@ -0,0 +1,170 @@
+package com.example.myapplication;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Accounts for the large allocations of the pipeline (decoded and prefetched bitmaps, image
+ * planes, detector tensors of every in-flight pass, recognizer bucket buffers) per stage
+ * against a configurable byte budget, and tracks the peak of each run.
+ *
+ * acquire never blocks or fails; it only records and logs. The budget is enforced by the
+ * callers asking before they allocate: decodeSampleSize picks a lower decode resolution,
+ * prefetchWindow keeps fewer images in flight and affordableWorkers runs fewer detector tiles
+ * at once, each never going below the minimum that still makes progress.
+ */
+public class MemoryBudget {
+    private static final String TAG = "MemoryBudget";
+
+    public static final String DECODED = "decoded";
+    public static final String PREFETCHED = "prefetched";
+    public static final String DETECTOR_INPUT = "detector_input";
+    public static final String DETECTOR_OUTPUT = "detector_output";
+    public static final String PLANES = "planes";
+    public static final String RECOGNIZER = "recognizer";
+
+    private final long budgetBytes;
+    private final float decodeShare;
+    private final Map<String, Long> current = new LinkedHashMap<>();
+    private final Map<String, Long> stagePeak = new LinkedHashMap<>();
+    private long total;
+    private long peak;
+
+    // decodeShare: fraction of the budget a single decoded image may take
+    public MemoryBudget(long budgetBytes, float decodeShare) {
+        this.budgetBytes = budgetBytes;
+        this.decodeShare = decodeShare;
+    }
+
+    public synchronized void acquire(String stage, long bytes) {
+        long stageBytes = get(current, stage) + bytes;
+        current.put(stage, stageBytes);
+        stagePeak.put(stage, Math.max(get(stagePeak, stage), stageBytes));
+        total += bytes;
+        peak = Math.max(peak, total);
+        if (total > budgetBytes) {
+            Log.w(TAG, "Over budget after " + stage + ": " + mb(total) + " > " + mb(budgetBytes));
+        }
+    }
+
+    public synchronized void release(String stage, long bytes) {
+        long stageBytes = Math.max(0, get(current, stage) - bytes);
+        current.put(stage, stageBytes);
+        total = Math.max(0, total - bytes);
+    }
+
+    public synchronized boolean isOverBudget() {
+        return total > budgetBytes;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return total;
+    }
+
+    // Bytes left before the budget, never negative
+    public synchronized long getHeadroomBytes() {
+        return Math.max(0, budgetBytes - total);
+    }
+
+    public synchronized long getPeakBytes() {
+        return peak;
+    }
+
+    // Peaks restart from what is still held, so each run reports its own high-water mark
+    public synchronized void beginRun() {
+        peak = total;
+        stagePeak.clear();
+        stagePeak.putAll(current);
+    }
+
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("current=").append(mb(total)).append(" peak=").append(mb(peak)).append(" budget=").append(mb(budgetBytes));
+        for (Map.Entry<String, Long> entry : stagePeak.entrySet()) {
+            sb.append(" | ").append(entry.getKey()).append(": now ").append(mb(get(current, entry.getKey())))
+                    .append(", peak ").append(mb(entry.getValue()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes the image with the smallest power-of-two subsampling that keeps the bitmap within
+     * the decode share of what is left of the budget. The bitmap is not accounted here; the
+     * stage that holds it acquires its bytes.
+     */
+    public Bitmap decode(ContentResolver resolver, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = decodeSampleSize(bounds.outWidth, bounds.outHeight);
+        if (sampleSize > 1) {
+            Log.i(TAG, "Decoding " + bounds.outWidth + "x" + bounds.outHeight + " at 1/" + sampleSize + " to stay within budget");
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    // Subsampling for an image of this size given the decode share of the current headroom
+    public int decodeSampleSize(int width, int height) {
+        return sampleSizeFor(width, height, (long) (getHeadroomBytes() * decodeShare));
+    }
+
+    // Smallest power of two that fits an ARGB_8888 decode in allowed bytes, keeping both sides >= 256
+    static int sampleSizeFor(int width, int height, long allowed) {
+        int sampleSize = 1;
+        while ((long) (width / sampleSize) * (height / sampleSize) * 4 > allowed
+                && width / (sampleSize * 2) >= 256 && height / (sampleSize * 2) >= 256) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Images of bytesPerImage that may be decoded ahead at once, between 1 and configured.
+     * Prefetched images already held count as part of the window, not against it. Before the
+     * first image size is known (bytesPerImage <= 0) only being over budget shrinks the window.
+     */
+    public synchronized int prefetchWindow(int configured, long bytesPerImage) {
+        configured = Math.max(1, configured);
+        if (bytesPerImage <= 0) return total > budgetBytes ? 1 : configured;
+        long others = total - get(current, PREFETCHED);
+        long fits = Math.max(0, budgetBytes - others) / bytesPerImage;
+        return (int) Math.max(1, Math.min(configured, fits));
+    }
+
+    // Workers of bytesPerWorker each that fit in the headroom, between 1 and max
+    public synchronized int affordableWorkers(int max, long bytesPerWorker) {
+        if (bytesPerWorker <= 0) return Math.max(1, max);
+        long fits = Math.max(0, budgetBytes - total) / bytesPerWorker;
+        return (int) Math.max(1, Math.min(max, fits));
+    }
+
+    private static long get(Map<String, Long> map, String key) {
+        Long value = map.get(key);
+        return value != null ? value : 0L;
+    }
+
+    private static String mb(long bytes) {
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+}
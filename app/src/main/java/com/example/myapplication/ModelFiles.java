@@ -0,0 +1,24 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-maps .tflite files outside the APK assets (downloaded model versions, models given
+ * to the profiler). Free of Android classes, so the desktop profiler can use it too.
+ */
+public final class ModelFiles {
+
+    private ModelFiles() {
+    }
+
+    // The mapping stays valid after the channel is closed
+    public static MappedByteBuffer map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.myapplication;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Profiles a .tflite model: times N runs per execution configuration (CPU threads, XNNPACK,
+ * GPU delegate when present) and breaks the measured run time down by op type.
+ *
+ * The Java interpreter API only reports whole-run timings, so the per-op split is an estimate:
+ * op types and tensor shapes are read from the model flatbuffer, each op gets a MAC-based cost,
+ * and the measured mean run time is distributed by cost share. Reports label that table as an
+ * estimate. No Android classes are used, so this also runs on a desktop JVM via
+ * {@link #main(String[])}; the app's tensorflow-lite AAR only carries device libraries, so that
+ * needs a host build of the TFLite Java API and libtensorflowlite_jni (see the profileModels
+ * task in app/build.gradle.kts).
+ */
+public class ModelProfiler {
+
+    static final String OPS_ESTIMATE_NOTE = "Per-op times are ESTIMATES: the baseline mean run time split by estimated MAC share, not measured per op";
+
+    public static class Config {
+        public int warmupRuns = 3;
+        public int runs = 20;
+        public int[] threadCounts = {1, 4};
+        public boolean tryXnnpack = true;
+        public boolean tryGpu = true;
+    }
+
+    public static class OpStat {
+        public String opType;
+        public int count;
+        public long macs;          // estimated multiply-accumulates (elements for non-MAC ops)
+        public double totalMs;     // estimated share of the baseline run, summed over all runs
+        public double meanMs;      // estimated share of one baseline run
+        public double percent;
+    }
+
+    public static class TimingStat {
+        public String name;
+        public int runs;
+        public double totalMs;
+        public double meanMs;
+        public double minMs;
+        public double maxMs;
+        public double percent;     // of the baseline (first) configuration
+    }
+
+    public static class Report {
+        public String model;
+        public List<TimingStat> timings = new ArrayList<>();
+        public List<OpStat> ops = new ArrayList<>();
+        // "configuration: reason" for each configuration that could not run this model
+        public List<String> skipped = new ArrayList<>();
+
+        public String toText() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Model: ").append(model).append('\n');
+            sb.append(String.format(Locale.ROOT, "%-24s %6s %12s %10s %10s %10s %8s%n", "configuration", "runs", "total_ms", "mean_ms", "min_ms", "max_ms", "%"));
+            for (TimingStat t : timings) {
+                sb.append(String.format(Locale.ROOT, "%-24s %6d %12.2f %10.3f %10.3f %10.3f %8.1f%n", t.name, t.runs, t.totalMs, t.meanMs, t.minMs, t.maxMs, t.percent));
+            }
+            for (String reason : skipped) {
+                sb.append("skipped ").append(reason).append('\n');
+            }
+            sb.append('\n');
+            sb.append(OPS_ESTIMATE_NOTE).append('\n');
+            sb.append(String.format(Locale.ROOT, "%-28s %6s %14s %12s %10s %8s%n", "op_type", "count", "est_macs", "est_total_ms", "est_mean_ms", "%"));
+            for (OpStat o : ops) {
+                sb.append(String.format(Locale.ROOT, "%-28s %6d %14d %12.2f %10.3f %8.1f%n", o.opType, o.count, o.macs, o.totalMs, o.meanMs, o.percent));
+            }
+            return sb.toString();
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\n  \"model\": \"").append(escape(model)).append("\",\n  \"timings\": [");
+            for (int i = 0; i < timings.size(); i++) {
+                TimingStat t = timings.get(i);
+                sb.append(i == 0 ? "\n" : ",\n").append(String.format(Locale.ROOT,
+                        "    {\"configuration\": \"%s\", \"runs\": %d, \"total_ms\": %.3f, \"mean_ms\": %.3f, \"min_ms\": %.3f, \"max_ms\": %.3f, \"percent\": %.2f}",
+                        escape(t.name), t.runs, t.totalMs, t.meanMs, t.minMs, t.maxMs, t.percent));
+            }
+            sb.append("\n  ],\n  \"ops_note\": \"").append(escape(OPS_ESTIMATE_NOTE)).append("\",\n  \"ops\": [");
+            for (int i = 0; i < ops.size(); i++) {
+                OpStat o = ops.get(i);
+                sb.append(i == 0 ? "\n" : ",\n").append(String.format(Locale.ROOT,
+                        "    {\"op_type\": \"%s\", \"count\": %d, \"est_macs\": %d, \"est_total_ms\": %.3f, \"est_mean_ms\": %.4f, \"percent\": %.2f}",
+                        escape(o.opType), o.count, o.macs, o.totalMs, o.meanMs, o.percent));
+            }
+            sb.append("\n  ]\n}\n");
+            return sb.toString();
+        }
+
+        public void write(File directory) throws IOException {
+            String base = model.replace(".tflite", "");
+            try (Writer w = new FileWriter(new File(directory, base + ".profile.json"))) {
+                w.write(toJson());
+            }
+            try (Writer w = new FileWriter(new File(directory, base + ".profile.txt"))) {
+                w.write(toText());
+            }
+        }
+    }
+
+    public static Report profile(String name, ByteBuffer model, Config config) {
+        Report report = new Report();
+        report.model = name;
+
+        for (int threads : config.threadCounts) {
+            Interpreter.Options options = new Interpreter.Options().setNumThreads(threads).setUseXNNPACK(false);
+            addTiming(report, "cpu_threads_" + threads, model, options, config);
+            if (config.tryXnnpack) {
+                addTiming(report, "xnnpack_threads_" + threads, model,
+                        new Interpreter.Options().setNumThreads(threads).setUseXNNPACK(true), config);
+            }
+        }
+        if (config.tryGpu) {
+            Delegate gpu = createGpuDelegate();
+            if (gpu != null) {
+                addTiming(report, "gpu_delegate", model, new Interpreter.Options().addDelegate(gpu), config);
+                closeQuietly(gpu);
+            }
+        }
+
+        double baseline = report.timings.isEmpty() ? 0 : report.timings.get(0).meanMs;
+        for (TimingStat t : report.timings) {
+            t.percent = baseline > 0 ? 100.0 * t.meanMs / baseline : 0;
+        }
+
+        int baselineRuns = report.timings.isEmpty() ? 0 : report.timings.get(0).runs;
+        report.ops = estimateOps(model, baseline, baselineRuns);
+        return report;
+    }
+
+    private static void addTiming(Report report, String name, ByteBuffer model, Interpreter.Options options, Config config) {
+        try (Interpreter interpreter = new Interpreter(model, options)) {
+            Object[] inputs = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = allocate(interpreter.getInputTensor(i));
+            }
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputs.put(i, allocate(interpreter.getOutputTensor(i)));
+            }
+
+            for (int i = 0; i < config.warmupRuns; i++) {
+                runOnce(interpreter, inputs, outputs);
+            }
+
+            TimingStat stat = new TimingStat();
+            stat.name = name;
+            stat.minMs = Double.MAX_VALUE;
+            for (int i = 0; i < config.runs; i++) {
+                long start = System.nanoTime();
+                runOnce(interpreter, inputs, outputs);
+                Long nativeNanos = interpreter.getLastNativeInferenceDurationNanoseconds();
+                double ms = (nativeNanos != null ? nativeNanos : System.nanoTime() - start) / 1e6;
+                stat.totalMs += ms;
+                stat.minMs = Math.min(stat.minMs, ms);
+                stat.maxMs = Math.max(stat.maxMs, ms);
+                stat.runs++;
+            }
+            stat.meanMs = stat.runs > 0 ? stat.totalMs / stat.runs : 0;
+            report.timings.add(stat);
+        } catch (Exception e) {
+            // A delegate that cannot take this model is reported as skipped rather than failing the profile;
+            // the caller logs it, since this class stays free of Android and console output
+            report.skipped.add(name + ": " + e.getMessage());
+        }
+    }
+
+    private static void runOnce(Interpreter interpreter, Object[] inputs, Map<Integer, Object> outputs) {
+        for (Object in : inputs) ((ByteBuffer) in).rewind();
+        for (Object out : outputs.values()) ((ByteBuffer) out).rewind();
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    private static ByteBuffer allocate(Tensor tensor) {
+        return ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    // Loaded reflectively so the profiler still links where the GPU artifact is missing
+    private static Delegate createGpuDelegate() {
+        try {
+            return (Delegate) Class.forName("org.tensorflow.lite.gpu.GpuDelegate").getConstructor().newInstance();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Delegate delegate) {
+        try {
+            delegate.getClass().getMethod("close").invoke(delegate);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    // Per-op-type cost from the flatbuffer, with the measured run time distributed by cost share
+    static List<OpStat> estimateOps(ByteBuffer model, double meanRunMs, int runs) {
+        Map<String, OpStat> byType = new LinkedHashMap<>();
+        long totalMacs = 0;
+        for (long[] op : readOperators(model)) {
+            String type = opName((int) op[0]);
+            OpStat stat = byType.get(type);
+            if (stat == null) {
+                stat = new OpStat();
+                stat.opType = type;
+                byType.put(type, stat);
+            }
+            stat.count++;
+            stat.macs += op[1];
+            totalMacs += op[1];
+        }
+
+        List<OpStat> ops = new ArrayList<>(byType.values());
+        for (OpStat stat : ops) {
+            double share = totalMacs > 0 ? stat.macs / (double) totalMacs : 0;
+            stat.percent = 100.0 * share;
+            stat.meanMs = meanRunMs * share;
+            stat.totalMs = stat.meanMs * runs;
+        }
+        Collections.sort(ops, (a, b) -> Double.compare(b.percent, a.percent));
+        return ops;
+    }
+
+    /**
+     * Reads {builtin op code, estimated cost} for every operator of the first subgraph.
+     * Minimal flatbuffer walk over the TFLite schema: Model.operator_codes (1), Model.subgraphs (2),
+     * SubGraph.tensors (0) / operators (3), Operator.opcode_index (0) / inputs (1) / outputs (2),
+     * Tensor.shape (0), OperatorCode.deprecated_builtin_code (0) / builtin_code (3).
+     */
+    static List<long[]> readOperators(ByteBuffer model) {
+        ByteBuffer buf = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int root = buf.getInt(0);
+
+        int codesVec = field(buf, root, 1);
+        int subgraphs = field(buf, root, 2);
+        List<long[]> result = new ArrayList<>();
+        if (codesVec == 0 || subgraphs == 0 || vectorLength(buf, deref(buf, subgraphs)) == 0) return result;
+
+        int codes = deref(buf, codesVec);
+        int[] builtinCodes = new int[vectorLength(buf, codes)];
+        for (int i = 0; i < builtinCodes.length; i++) {
+            int code = tableAt(buf, codes, i);
+            int deprecated = field(buf, code, 0);
+            int builtin = field(buf, code, 3);
+            int value = deprecated != 0 ? buf.get(deprecated) : 0;
+            if (builtin != 0) value = Math.max(value, buf.getInt(builtin));
+            builtinCodes[i] = value;
+        }
+
+        int subgraph = tableAt(buf, deref(buf, subgraphs), 0);
+        int tensorsField = field(buf, subgraph, 0);
+        int operatorsField = field(buf, subgraph, 3);
+        if (tensorsField == 0 || operatorsField == 0) return result;
+        int tensors = deref(buf, tensorsField);
+        int operators = deref(buf, operatorsField);
+
+        for (int i = 0; i < vectorLength(buf, operators); i++) {
+            int op = tableAt(buf, operators, i);
+            int opcodeField = field(buf, op, 0);
+            int opcodeIndex = opcodeField != 0 ? buf.getInt(opcodeField) : 0;
+            int builtin = opcodeIndex < builtinCodes.length ? builtinCodes[opcodeIndex] : -1;
+
+            int[] inputs = intVector(buf, field(buf, op, 1));
+            int[] outputs = intVector(buf, field(buf, op, 2));
+            int[] outShape = outputs.length > 0 ? tensorShape(buf, tensors, outputs[0]) : new int[0];
+            int[] weightShape = inputs.length > 1 ? tensorShape(buf, tensors, inputs[1]) : new int[0];
+            result.add(new long[]{builtin, estimateCost(builtin, outShape, weightShape)});
+        }
+        return result;
+    }
+
+    private static long estimateCost(int builtin, int[] outShape, int[] weightShape) {
+        long outElements = product(outShape);
+        if ((builtin == 3 || builtin == 67) && weightShape.length == 4) {
+            // CONV_2D / TRANSPOSE_CONV: filter [Cout, kh, kw, Cin]
+            return outElements * weightShape[1] * weightShape[2] * weightShape[3];
+        } else if (builtin == 4 && weightShape.length == 4) {
+            // DEPTHWISE_CONV_2D: filter [1, kh, kw, Cout]
+            return outElements * weightShape[1] * weightShape[2];
+        } else if (builtin == 9 && weightShape.length == 2) {
+            // FULLY_CONNECTED: weights [out, in]
+            return outElements * weightShape[1];
+        } else if ((builtin == 16 || builtin == 44 || builtin == 52) && weightShape.length == 2) {
+            // LSTM variants: four gates over the input weights
+            return 4L * outElements * weightShape[1];
+        }
+        return Math.max(1, outElements);
+    }
+
+    private static long product(int[] shape) {
+        long p = shape.length > 0 ? 1 : 0;
+        for (int d : shape) p *= Math.max(1, d);
+        return p;
+    }
+
+    private static int[] tensorShape(ByteBuffer buf, int tensors, int index) {
+        if (index < 0 || index >= vectorLength(buf, tensors)) return new int[0];
+        return intVector(buf, field(buf, tableAt(buf, tensors, index), 0));
+    }
+
+    // Absolute position of a field's value, or 0 when the field is absent
+    private static int field(ByteBuffer buf, int table, int id) {
+        int vtable = table - buf.getInt(table);
+        int vtableLength = buf.getShort(vtable) & 0xFFFF;
+        int entry = 4 + 2 * id;
+        if (entry >= vtableLength) return 0;
+        int offset = buf.getShort(vtable + entry) & 0xFFFF;
+        return offset == 0 ? 0 : table + offset;
+    }
+
+    private static int deref(ByteBuffer buf, int pos) {
+        return pos + buf.getInt(pos);
+    }
+
+    private static int vectorLength(ByteBuffer buf, int vector) {
+        return buf.getInt(vector);
+    }
+
+    private static int tableAt(ByteBuffer buf, int vector, int i) {
+        return deref(buf, vector + 4 + 4 * i);
+    }
+
+    private static int[] intVector(ByteBuffer buf, int fieldPos) {
+        if (fieldPos == 0) return new int[0];
+        int vector = deref(buf, fieldPos);
+        int[] values = new int[vectorLength(buf, vector)];
+        for (int i = 0; i < values.length; i++) values[i] = buf.getInt(vector + 4 + 4 * i);
+        return values;
+    }
+
+    private static final String[] OP_NAMES = {
+            "ADD", "AVERAGE_POOL_2D", "CONCATENATION", "CONV_2D", "DEPTHWISE_CONV_2D", "DEPTH_TO_SPACE",
+            "DEQUANTIZE", "EMBEDDING_LOOKUP", "FLOOR", "FULLY_CONNECTED", "HASHTABLE_LOOKUP", "L2_NORMALIZATION",
+            "L2_POOL_2D", "LOCAL_RESPONSE_NORMALIZATION", "LOGISTIC", "LSH_PROJECTION", "LSTM", "MAX_POOL_2D",
+            "MUL", "RELU", "RELU_N1_TO_1", "RELU6", "RESHAPE", "RESIZE_BILINEAR", "RNN", "SOFTMAX",
+            "SPACE_TO_DEPTH", "SVDF", "TANH", "CONCAT_EMBEDDINGS", "SKIP_GRAM", "CALL", "CUSTOM",
+            "EMBEDDING_LOOKUP_SPARSE", "PAD", "UNIDIRECTIONAL_SEQUENCE_RNN", "GATHER", "BATCH_TO_SPACE_ND",
+            "SPACE_TO_BATCH_ND", "TRANSPOSE", "MEAN", "SUB", "DIV", "SQUEEZE", "UNIDIRECTIONAL_SEQUENCE_LSTM",
+            "STRIDED_SLICE", "BIDIRECTIONAL_SEQUENCE_RNN", "EXP", "TOPK_V2", "SPLIT", "LOG_SOFTMAX", "DELEGATE",
+            "BIDIRECTIONAL_SEQUENCE_LSTM", "CAST", "PRELU", "MAXIMUM", "ARG_MAX", "MINIMUM", "LESS", "NEG",
+            "PADV2", "GREATER", "GREATER_EQUAL", "LESS_EQUAL", "SELECT", "SLICE", "SIN", "TRANSPOSE_CONV",
+            "SPARSE_TO_DENSE", "TILE", "EXPAND_DIMS", "EQUAL", "NOT_EQUAL", "LOG", "SUM", "SQRT", "RSQRT",
+            "SHAPE", "POW", "ARG_MIN", "FAKE_QUANT", "REDUCE_PROD", "REDUCE_MAX", "PACK", "LOGICAL_OR",
+            "ONE_HOT", "LOGICAL_AND", "LOGICAL_NOT", "UNPACK", "REDUCE_MIN", "FLOOR_DIV", "REDUCE_ANY",
+            "SQUARE", "ZEROS_LIKE", "FILL", "FLOOR_MOD", "RANGE", "RESIZE_NEAREST_NEIGHBOR", "LEAKY_RELU",
+            "SQUARED_DIFFERENCE", "MIRROR_PAD", "ABS", "SPLIT_V", "UNIQUE", "CEIL", "REVERSE_V2", "ADD_N",
+            "GATHER_ND", "COS", "WHERE", "RANK", "ELU", "REVERSE_SEQUENCE", "MATRIX_DIAG", "QUANTIZE",
+            "MATRIX_SET_DIAG", "ROUND", "HARD_SWISH", "IF", "WHILE", "NON_MAX_SUPPRESSION_V4",
+            "NON_MAX_SUPPRESSION_V5", "SCATTER_ND", "SELECT_V2", "DENSIFY", "SEGMENT_SUM", "BATCH_MATMUL"
+    };
+
+    static String opName(int builtin) {
+        return builtin >= 0 && builtin < OP_NAMES.length ? OP_NAMES[builtin] : "BUILTIN_" + builtin;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // Usage: ModelProfiler <outputDir> <runs> <model.tflite>...
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ModelProfiler <outputDir> <runs> <model.tflite>...");
+            System.exit(2);
+        }
+        File outputDir = new File(args[0]);
+        Config config = new Config();
+        config.runs = Integer.parseInt(args[1]);
+        config.tryGpu = false;
+
+        for (String path : Arrays.copyOfRange(args, 2, args.length)) {
+            File file = new File(path);
+            Report report = profile(file.getName(), ModelFiles.map(file), config);
+            report.write(outputDir);
+            System.out.print(report.toText());
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One version of the detector, recognizer and labels together with everything built on their
+ * interpreters (tile pool, cascade, recognizer buckets). OcrEngine swaps whole sets, so a
+ * request never mixes the detector of one version with the recognizer of another.
+ *
+ * A version directory under the models directory holds detector.tflite, recognizer.tflite and
+ * labels.txt, and the directory name is the version. The bundled version reads the asset names
+ * from OcrOptions instead.
+ */
+public class ModelSet {
+    private static final String TAG = "ModelSet";
+
+    public static final String BUNDLED = "bundled";
+    public static final String DETECTOR_FILE = "detector.tflite";
+    public static final String RECOGNIZER_FILE = "recognizer.tflite";
+    public static final String LABELS_FILE = "labels.txt";
+
+    // Where the three files of a version come from
+    public static class Source {
+        public final String version;
+        final File dir;            // null for the bundled assets
+        final String detectorName;
+        final String recognizerName;
+        final String labelsName;
+
+        private Source(String version, File dir, String detectorName, String recognizerName, String labelsName) {
+            this.version = version;
+            this.dir = dir;
+            this.detectorName = detectorName;
+            this.recognizerName = recognizerName;
+            this.labelsName = labelsName;
+        }
+
+        public static Source bundled(OcrOptions options) {
+            return new Source(BUNDLED, null, options.detectorModel, options.recognizerModel, options.labelsAsset);
+        }
+
+        public boolean isBundled() {
+            return dir == null;
+        }
+
+        public static Source directory(File dir) {
+            return new Source(dir.getName(), dir, DETECTOR_FILE, RECOGNIZER_FILE, LABELS_FILE);
+        }
+
+        ByteBuffer map(Context context, String name) throws IOException {
+            return dir != null ? ModelFiles.map(new File(dir, name)) : OcrEngine.mapModelAsset(context, name);
+        }
+
+        InputStream open(Context context, String name) throws IOException {
+            return dir != null ? new FileInputStream(new File(dir, name)) : context.getAssets().open(name);
+        }
+
+        @Override
+        public String toString() {
+            return dir != null ? version + " (" + dir + ")" : version + " (assets)";
+        }
+    }
+
+    // Pipeline latency of the requests a version served; kept by version across swaps
+    public static class LatencyStats {
+        private static final int WINDOW = 64;
+
+        private final long[] totals = new long[WINDOW];
+        private long count;
+        private long detectSum;
+        private long totalSum;
+
+        public synchronized void record(long detectMs, long totalMs) {
+            totals[(int) (count % WINDOW)] = totalMs;
+            count++;
+            detectSum += detectMs;
+            totalSum += totalMs;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getMeanTotalMs() {
+            return count > 0 ? totalSum / (double) count : 0;
+        }
+
+        public synchronized double getMeanDetectMs() {
+            return count > 0 ? detectSum / (double) count : 0;
+        }
+
+        // Over the last WINDOW requests
+        public synchronized long getP95TotalMs() {
+            int n = (int) Math.min(count, WINDOW);
+            if (n == 0) return 0;
+            long[] recent = Arrays.copyOf(totals, n);
+            Arrays.sort(recent);
+            return recent[Math.min(n - 1, (int) Math.ceil(n * 0.95) - 1)];
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT, "%d runs, mean detect %.1f ms, mean total %.1f ms, p95 total %d ms",
+                    count, getMeanDetectMs(), getMeanTotalMs(), getP95TotalMs());
+        }
+    }
+
+    public final Source source;
+    public final LatencyStats stats;
+    final Interpreter detector;
+    final Interpreter recognizer;
+    final List<String> labels;
+    final int blankIndex;
+    // Whether either model takes 3 channels; otherwise requests only build the luminance plane
+    final boolean readsRgb;
+    TiledDetector tiledDetector;
+    CascadeDetector cascadeDetector;
+    RecognizerBuckets recognizerBuckets;
+    private final List<Interpreter> interpreters = new ArrayList<>();
+    // Interpreters read the weights straight from these mappings, so they live as long as the set
+    private ByteBuffer detectorModel;
+    private ByteBuffer recognizerModel;
+    private boolean closed;
+
+    private ModelSet(Source source, LatencyStats stats, ByteBuffer detectorModel, ByteBuffer recognizerModel, List<String> labels) {
+        this.source = source;
+        this.stats = stats;
+        this.detectorModel = detectorModel;
+        this.recognizerModel = recognizerModel;
+        this.labels = labels;
+        this.blankIndex = labels.size() - 1;
+        try {
+            this.detector = newInterpreter(detectorModel);
+            this.recognizer = newInterpreter(recognizerModel);
+        } catch (RuntimeException e) {
+            // The detector may already exist when the recognizer fails
+            for (Interpreter interpreter : interpreters) {
+                interpreter.close();
+            }
+            interpreters.clear();
+            throw e;
+        }
+        this.readsRgb = channels(detector.getInputTensor(0).shape()) != 1 || channels(recognizer.getInputTensor(0).shapeSignature()) != 1;
+    }
+
+    // Channel count of a 4D NHWC or NCHW image input, 0 when the layout is not recognised
+    private static int channels(int[] shape) {
+        if (shape.length != 4) return 0;
+        if (shape[3] == 1 || shape[3] == 3) return shape[3];
+        if (shape[1] == 1 || shape[1] == 3) return shape[1];
+        return 0;
+    }
+
+    /**
+     * Maps the models of a version and builds its interpreters and helpers. Nothing here
+     * touches the interpreters of the version currently serving requests.
+     */
+    public static ModelSet load(Context context, Source source, OcrOptions options, LatencyStats stats) throws IOException {
+        ByteBuffer detectorModel = source.map(context, source.detectorName);
+        ByteBuffer recognizerModel = source.map(context, source.recognizerName);
+        List<String> labels = readLabels(context, source);
+        if (labels.isEmpty()) {
+            throw new IOException("Label list of " + source + " is empty.");
+        }
+
+        ModelSet set;
+        try {
+            set = new ModelSet(source, stats, detectorModel, recognizerModel, labels);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to create interpreters for " + source + ": " + e.getMessage(), e);
+        }
+        try {
+            set.buildHelpers(options);
+        } catch (RuntimeException e) {
+            set.close();
+            throw new IOException("Models of " + source + " do not fit the pipeline: " + e.getMessage(), e);
+        }
+        Log.d(TAG, "Loaded " + source + " with " + labels.size() + " labels, blankIndex = " + set.blankIndex);
+        return set;
+    }
+
+    private Interpreter newInterpreter(ByteBuffer model) {
+        Interpreter interpreter = new Interpreter(model);
+        interpreters.add(interpreter);
+        return interpreter;
+    }
+
+    private void buildHelpers(OcrOptions options) {
+        if (options.tiledDetection) {
+            // Interpreters are not thread-safe, so every parallel tile worker gets its own
+            List<Interpreter> tileDetectors = new ArrayList<>();
+            tileDetectors.add(detector);
+            for (int i = 1; i < options.tileConcurrency; i++) {
+                tileDetectors.add(newInterpreter(detectorModel));
+            }
+            TiledDetector.Config tileConfig = new TiledDetector.Config();
+            tileConfig.overlap = options.tileOverlap;
+            tileConfig.concurrency = tileDetectors.size();
+            tileConfig.textThreshold = options.textThreshold;
+            tileConfig.linkThreshold = options.linkThreshold;
+            tileConfig.minArea = options.minBoxArea;
+            tiledDetector = new TiledDetector(tileDetectors, tileConfig);
+            if (options.cascadeDetection) {
+                cascadeDetector = new CascadeDetector(tiledDetector, new CascadeDetector.Config());
+            }
+        }
+
+        if (RecognizerBuckets.hasDynamicWidth(recognizer)) {
+            RecognizerBuckets.Config bucketConfig = new RecognizerBuckets.Config();
+            bucketConfig.widths = options.getRecognizerWidthBuckets();
+            bucketConfig.height = options.recognizerHeight;
+            recognizerBuckets = new RecognizerBuckets(recognizer, () -> newInterpreter(recognizerModel), bucketConfig);
+        }
+    }
+
+    private static List<String> readLabels(Context context, Source source) throws IOException {
+        List<String> labels = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(context, source.labelsName), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                labels.add(line);
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Checks the tensors against what the pipeline assumes: 4D detector and recognizer inputs
+     * with 1 or 3 channels, a [1,H,W,>=2] score/link map and a [1,T,C] recognizer output whose C
+     * equals the label count (blank included). Returns the problems found, empty if none.
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        try {
+            TiledDetector.detectorInputSize(detector.getInputTensor(0).shape());
+        } catch (IllegalArgumentException e) {
+            problems.add("detector input: " + e.getMessage());
+        }
+        int[] detectorOut = detector.getOutputTensor(0).shape();
+        if (detectorOut.length != 4 || detectorOut[3] < 2) {
+            problems.add("detector output " + Arrays.toString(detectorOut) + " is not a [1,H,W,2] score/link map");
+        }
+
+        int[] recognizerIn = recognizer.getInputTensor(0).shapeSignature();
+        if (recognizerIn.length != 4 || !(recognizerIn[3] == 1 || recognizerIn[3] == 3 || recognizerIn[1] == 1 || recognizerIn[1] == 3)) {
+            problems.add("recognizer input " + Arrays.toString(recognizerIn) + " is not a 4D image with 1 or 3 channels");
+        }
+        Tensor recognizerOutput = recognizer.getOutputTensor(0);
+        int[] recognizerOut = recognizerOutput.shape();
+        if (recognizerOut.length != 3) {
+            problems.add("recognizer output " + Arrays.toString(recognizerOut) + " is not [1,T,C]");
+        } else if (recognizerOut[2] != labels.size()) {
+            problems.add("recognizer output has " + recognizerOut[2] + " classes but there are " + labels.size() + " labels");
+        }
+        return problems;
+    }
+
+    /**
+     * Runs one inference through the detector and recognizer on blank inputs so tensor
+     * allocation and delegate setup are paid before the version takes requests. Returns the
+     * time taken in milliseconds.
+     */
+    public long warmUp(OcrOptions options) {
+        long start = System.nanoTime();
+        OcrEngine.runDetectorRaw(detector, zeroInput(detector));
+        if (recognizerBuckets != null) {
+            int w = options.getRecognizerWidthBuckets()[0];
+            int h = options.recognizerHeight;
+            recognizerBuckets.recognize(ImagePlanes.blank(w, h), new Rect(0, 0, w, h), labels, blankIndex);
+        } else {
+            recognizer.run(zeroInput(recognizer), QuantizedOps.allocateOutput(recognizer.getOutputTensor(0)));
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static ByteBuffer zeroInput(Interpreter interpreter) {
+        return ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Closes every interpreter of this version and drops the model mappings. The mappings are
+     * unmapped once collected; Java has no explicit unmap. Only call this when no request can
+     * still be using the set.
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (tiledDetector != null) tiledDetector.close();
+        for (Interpreter interpreter : interpreters) {
+            interpreter.close();
+        }
+        interpreters.clear();
+        detectorModel = null;
+        recognizerModel = null;
+        tiledDetector = null;
+        cascadeDetector = null;
+        recognizerBuckets = null;
+        Log.d(TAG, "Released " + source);
+    }
+
+    // Version directories under modelsDir, oldest first by compareVersions
+    public static List<File> listVersions(File modelsDir) {
+        List<File> versions = new ArrayList<>();
+        File[] children = modelsDir.listFiles();
+        if (children == null) return versions;
+        for (File child : children) {
+            if (child.isDirectory() && new File(child, DETECTOR_FILE).isFile()
+                    && new File(child, RECOGNIZER_FILE).isFile() && new File(child, LABELS_FILE).isFile()) {
+                versions.add(child);
+            }
+        }
+        versions.sort((a, b) -> compareVersions(a.getName(), b.getName()));
+        return versions;
+    }
+
+    /**
+     * Orders version names by their runs of digits as numbers and everything else as text, so
+     * "v9" < "v10" and "1.2" < "1.10". Names equal under that order fall back to plain string
+     * order, which keeps the sort total.
+     */
+    static int compareVersions(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int endA = i;
+                while (endA < a.length() && Character.isDigit(a.charAt(endA))) endA++;
+                int endB = j;
+                while (endB < b.length() && Character.isDigit(b.charAt(endB))) endB++;
+                // Compare without parsing, so long numbers cannot overflow: drop leading zeros, then length, then digits
+                String numA = a.substring(i, endA).replaceFirst("^0+(?=.)", "");
+                String numB = b.substring(j, endB).replaceFirst("^0+(?=.)", "");
+                int c = numA.length() != numB.length() ? Integer.compare(numA.length(), numB.length()) : numA.compareTo(numB);
+                if (c != 0) return c;
+                i = endA;
+                j = endB;
+            } else {
+                if (ca != cb) return Character.compare(ca, cb);
+                i++;
+                j++;
+            }
+        }
+        int c = Integer.compare(a.length() - i, b.length() - j);
+        return c != 0 ? c : a.compareTo(b);
+    }
+
+    @Override
+    public String toString() {
+        return source.version;
+    }
+}
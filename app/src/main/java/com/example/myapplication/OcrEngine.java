@@ -0,0 +1,958 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide OCR service. It owns the current {@link ModelSet} (detector and recognizer
+ * interpreters, labels and the per-pipeline helpers) and runs every request on one
+ * {@link OcrExecutor} worker. New model versions can be installed from a models directory
+ * while the app runs; they are swapped in between requests.
+ * Activities and background workers submit work here and get futures back; interactive
+ * requests are scheduled ahead of background ones, and identical in-flight requests (same
+ * image uri or caller key) share one computation.
+ */
+public class OcrEngine {
+    private static final String TAG = "OcrEngine";
+
+    // Detector inputs at least this large are preprocessed in parallel row stripes
+    private static final int PARALLEL_PREPROCESS_MIN_PIXELS = 512 * 512;
+    private static final int PREPROCESS_STRIPE_ROWS = 32;
+    private static final int PLANE_BAND_ROWS = 64;
+    // Executor slot of camera frames; a newer frame replaces a waiting one
+    private static final String FRAME_SLOT = "frame";
+
+    private static OcrEngine instance;
+
+    private final Context context;
+    private final OcrOptions options;
+    // Swapped only on the worker thread between requests, so a request sees one version throughout
+    private volatile ModelSet models;
+    // The version replaced by the last swap, already released; rollback reloads it
+    private volatile ModelSet.Source previousSource;
+    private final Map<String, ModelSet.LatencyStats> latencyByVersion = new ConcurrentHashMap<>();
+    // Loads, validates and warms up new versions away from the worker thread
+    private final ExecutorService modelLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ocr-model-loader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    // Rejects blank, rule-like and smudge boxes before a crop or tensor is built
+    private final CropPrefilter cropPrefilter = new CropPrefilter(new CropPrefilter.Config());
+    private final MemoryBudget memoryBudget;
+    private final OcrExecutor executor = new OcrExecutor();
+    // Skips detection on stable frames of a continuous stream
+    private final FrameTracker frameTracker = new FrameTracker(new FrameTracker.Config(),
+            (planes, budget) -> runStages(models, planes, budget, null), this::recognizeRegion);
+    // Only touched on the worker thread; set per request from its priority
+    private boolean verboseLogging;
+    private int captureCount;
+
+    /**
+     * Returns the shared engine, loading the models on first use. Later calls get the same
+     * engine and must pass equal options; different ones throw IllegalStateException, since
+     * the engine keeps the options it was created with.
+     */
+    public static synchronized OcrEngine get(Context context, OcrOptions options) throws IOException {
+        if (instance == null) {
+            instance = new OcrEngine(context.getApplicationContext(), options);
+        } else if (!options.equals(instance.options)) {
+            throw new IllegalStateException("Engine already created with " + instance.options + ", cannot use " + options);
+        }
+        return instance;
+    }
+
+    // The shared engine with the app's options; screens should use this rather than build their own
+    public static OcrEngine get(Context context) throws IOException {
+        synchronized (OcrEngine.class) {
+            return instance != null ? instance : get(context, appOptions(context));
+        }
+    }
+
+    // The one place the app configures the engine: bundled models plus versions installed under files/models
+    public static OcrOptions appOptions(Context context) {
+        return OcrOptions.defaults().toBuilder()
+                .setModelsDir(new File(context.getFilesDir(), "models").getPath())
+                .build();
+    }
+
+    // Starts on the newest valid version in the models directory, or on the bundled assets
+    private OcrEngine(Context context, OcrOptions options) throws IOException {
+        this.context = context;
+        this.options = options;
+        this.memoryBudget = new MemoryBudget(options.memoryBudgetBytes, options.decodeShare);
+
+        if (options.modelsDir != null) {
+            List<File> versions = ModelSet.listVersions(new File(options.modelsDir));
+            for (int i = versions.size() - 1; i >= 0 && models == null; i--) {
+                try {
+                    models = loadValidated(ModelSet.Source.directory(versions.get(i)));
+                } catch (IOException e) {
+                    Log.w(TAG, "Skipping model version " + versions.get(i).getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (models == null) {
+            models = loadValidated(ModelSet.Source.bundled(options));
+        }
+        Log.i(TAG, "Serving model version " + models.source);
+    }
+
+    public OcrOptions getOptions() {
+        return options;
+    }
+
+    // Prefilter rejections of the latest run, by reason
+    public CropPrefilter.Stats getPrefilterStats() {
+        return cropPrefilter.getStats();
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public OcrExecutor getExecutor() {
+        return executor;
+    }
+
+    public String getModelVersion() {
+        return models.source.version;
+    }
+
+    // Latency of every version served since the engine started
+    public String modelReport() {
+        StringBuilder sb = new StringBuilder("Serving model version ").append(models.source).append('\n');
+        for (Map.Entry<String, ModelSet.LatencyStats> entry : latencyByVersion.entrySet()) {
+            sb.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads the version in versionDir on a background thread, validates it and warms it up,
+     * then swaps it in on the worker once the running request finished; queued requests run on
+     * the new version and the old one is released. Completes with the version name, or
+     * exceptionally if the version was rejected, in which case the current one keeps serving.
+     */
+    public CompletableFuture<String> installModels(File versionDir) {
+        return install(ModelSet.Source.directory(versionDir));
+    }
+
+    // Reloads the version replaced by the last swap
+    public CompletableFuture<String> rollback() {
+        ModelSet.Source previous = previousSource;
+        if (previous == null) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("No previous model version to roll back to"));
+            return failed;
+        }
+        return install(previous);
+    }
+
+    private CompletableFuture<String> install(ModelSet.Source source) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ModelSet candidate = loadValidated(source);
+                Log.i(TAG, "Warmed up model version " + source.version + " in " + candidate.warmUp(options) + " ms");
+                return candidate;
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Rejected model version " + source + ": " + e.getMessage());
+                throw new CompletionException(e);
+            }
+        }, modelLoader).thenCompose(candidate -> {
+            // A swap that never ran (executor shut down) must not leak the candidate's interpreters
+            CompletableFuture<String> swapped = executor.submit(null, OcrExecutor.Priority.INTERACTIVE, 0, budget -> swap(candidate));
+            swapped.whenComplete((version, error) -> {
+                if (error != null) candidate.close();
+            });
+            return swapped;
+        });
+    }
+
+    private ModelSet loadValidated(ModelSet.Source source) throws IOException {
+        ModelSet set = ModelSet.load(context, source, options, statsFor(source));
+        List<String> problems = set.validate();
+        if (problems.isEmpty()) return set;
+        if (source.isBundled()) {
+            // The bundled models shipped with the app, so a mismatch is reported but not fatal
+            for (String problem : problems) Log.w(TAG, "Bundled models: " + problem);
+            return set;
+        }
+        set.close();
+        throw new IOException("Model version " + source.version + " failed validation: " + String.join("; ", problems));
+    }
+
+    private ModelSet.LatencyStats statsFor(ModelSet.Source source) {
+        return latencyByVersion.computeIfAbsent(source.version, version -> new ModelSet.LatencyStats());
+    }
+
+    // Runs as a worker task, so no request is using the old version when it is released
+    private String swap(ModelSet candidate) {
+        ModelSet old = models;
+        models = candidate;
+        previousSource = old.source;
+        // Tracked boxes and text came from the old models
+        frameTracker.reset();
+        old.close();
+        Log.i(TAG, "Swapped model version " + old.source.version + " -> " + candidate.source.version);
+        return candidate.source.version;
+    }
+
+    // After its first rollbackMinSamples complete runs, a swapped-in version is compared with the one it replaced
+    private void recordLatency(ModelSet set, long detectMs, long totalMs) {
+        set.stats.record(detectMs, totalMs);
+        ModelSet.Source previous = previousSource;
+        if (options.rollbackMinSamples <= 0 || previous == null || set.stats.getCount() != options.rollbackMinSamples) return;
+        ModelSet.LatencyStats baseline = latencyByVersion.get(previous.version);
+        if (baseline == null || baseline.getCount() < options.rollbackMinSamples) return;
+        if (set.stats.getMeanTotalMs() > baseline.getMeanTotalMs() * options.rollbackFactor) {
+            Log.w(TAG, "Model version " + set.source.version + " regressed (" + set.stats + ") against "
+                    + previous.version + " (" + baseline + "), rolling back");
+            rollback();
+        }
+    }
+
+    /**
+     * Decodes and recognizes an image. Requests for the same uri that are still queued or
+     * running share one decode and one pipeline run; only the listener of the request that
+     * started it receives streaming events.
+     */
+    public CompletableFuture<List<TextLine>> recognize(Uri uri, OcrExecutor.Priority priority, OcrListener listener) {
+        return submit(uri.toString(), priority, budget -> {
+            Bitmap bitmap = memoryBudget.decode(context.getContentResolver(), uri);
+            if (bitmap == null) {
+                throw new IOException("Could not decode " + uri);
+            }
+            // The engine decoded it, so the pipeline may recycle it once the planes are built
+            return runPipeline(bitmap, true, budget, listener);
+        });
+    }
+
+    // key identifies the image for coalescing; null runs the request on its own
+    public CompletableFuture<List<TextLine>> recognize(Bitmap bitmap, String key, OcrExecutor.Priority priority, OcrListener listener) {
+        return submit(key, priority, budget -> runPipeline(bitmap, false, budget, listener));
+    }
+
+    /**
+     * For continuously arriving frames (e.g. camera analysis); reuses boxes across stable frames.
+     * Only the newest waiting frame is kept: one still queued when the next arrives is dropped
+     * and its future cancelled. Frames run behind user picks, within frameBudgetMs each.
+     */
+    public CompletableFuture<List<TextLine>> processFrame(Bitmap frame) {
+        return executor.submitLatest(FRAME_SLOT, OcrExecutor.Priority.FRAME, options.frameBudgetMs, budget -> {
+            verboseLogging = false;
+            return runFrame(frame, budget);
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(String key, OcrExecutor.Priority priority, OcrExecutor.Task<T> task) {
+        boolean interactive = priority == OcrExecutor.Priority.INTERACTIVE;
+        long budgetMs = interactive ? options.interactiveBudgetMs : 0;
+        return executor.submit(key, priority, budgetMs, budget -> {
+            verboseLogging = options.verboseLogging && interactive;
+            return task.run(budget);
+        });
+    }
+
+    // The tracker downsamples, detects and re-recognizes from these planes; the bitmap is not read again
+    private List<TextLine> runFrame(Bitmap frame, RunBudget budget) throws Exception {
+        ModelSet set = models;
+        memoryBudget.beginRun();
+        ImagePlanes planes = decodePlanes(frame, new Rect(0, 0, frame.getWidth(), frame.getHeight()), set.readsRgb);
+        long planeBytes = planes.byteCount() + planes.halfByteCount();
+        memoryBudget.acquire(MemoryBudget.PLANES, planeBytes);
+        try {
+            return frameTracker.process(planes, budget);
+        } finally {
+            memoryBudget.release(MemoryBudget.PLANES, planeBytes);
+        }
+    }
+
+    static MappedByteBuffer mapModelAsset(Context context, String modelName) throws IOException {
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelName);
+        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+        FileChannel fileChannel = inputStream.getChannel();
+        long startOffset = fileDescriptor.getStartOffset();
+        long declaredLength = fileDescriptor.getDeclaredLength();
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    }
+
+    public static class Result {
+        public ByteBuffer buffer;
+        public int targetW;
+        public int targetH;
+        public ImagePlanes planes;    // resized planes the buffer was filled from
+    }
+
+    /**
+     * Copies a region of the bitmap into planes with a single pass of getPixels calls, one band
+     * of rows at a time so no full-size ARGB array is held next to the planes. The RGB planes
+     * are only built when rgb is set; luminance always is, since the crop prefilter reads it.
+     */
+    static ImagePlanes decodePlanes(Bitmap bitmap, Rect region, boolean rgb) {
+        int w = region.width();
+        int h = region.height();
+        ImagePlanes planes = new ImagePlanes(w, h, rgb, true);
+        int[] band = new int[w * Math.min(h, PLANE_BAND_ROWS)];
+        for (int y = 0; y < h; y += PLANE_BAND_ROWS) {
+            int rows = Math.min(PLANE_BAND_ROWS, h - y);
+            bitmap.getPixels(band, 0, w, region.left, region.top + y, w, rows);
+            planes.setRows(band, y, rows);
+        }
+        return planes;
+    }
+
+    // Resamples the region of the planes to the detector input and fills the input tensor
+    public static Result preprocessDetectorImage(ImagePlanes image, Rect region, int[] inputShape, DataType inputDtype, Tensor.QuantizationParams inputQuant) throws Exception {
+
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Error: Detector input shape not 4D: " + Arrays.toString(inputShape));
+        }
+
+        int batch = inputShape[0];
+        int d1 = inputShape[1];
+        int d2 = inputShape[2];
+        int d3 = inputShape[3];
+
+        String layout;
+        int targetH, targetW, channels;
+
+        if (d3 == 1 || d3 == 3) {
+            layout = "NHWC";
+            targetH = d1;
+            targetW = d2;
+            channels = d3;
+        } else if (d1 == 1 || d1 == 3) {
+            layout = "NCHW";
+            targetH = d2;
+            targetW = d3;
+            channels = d1;
+        } else {
+            throw new IllegalArgumentException("Cannot infer detector layout from shape " + Arrays.toString(inputShape));
+        }
+
+        // Resize only the planes the detector reads
+        ImagePlanes resized = image.resample(region.left, region.top, region.width(), region.height(), targetW, targetH, channels == 3);
+
+        float scale = inputQuant.getScale();
+        int zeroPoint = inputQuant.getZeroPoint();
+
+        // Quantized RGB inputs take the pixel bytes through a lookup table instead of float math
+        byte[] lut = QuantizedOps.buildInputLut(inputDtype, scale, zeroPoint);
+
+        int bytesPerChannel = getNumBytesPerChannel(inputDtype);
+        int numElements = batch * channels * targetH * targetW;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(numElements * bytesPerChannel);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // Every element is written at an absolute offset, so row stripes can be filled concurrently
+        boolean nchw = layout.equals("NCHW");
+        int rows = targetH;
+        if ((long) targetW * targetH < PARALLEL_PREPROCESS_MIN_PIXELS) {
+            PipelineStages.fillDetectorRows(buffer, resized, 0, rows, channels, nchw, inputDtype, scale, zeroPoint, lut);
+        } else {
+            PipelineStages.fillDetectorRowsStriped(buffer, resized, PREPROCESS_STRIPE_ROWS, channels, nchw, inputDtype, scale, zeroPoint, lut);
+        }
+
+        buffer.rewind();
+
+        int expectedSize = batch * channels * targetH * targetW * bytesPerChannel;
+        if (buffer.capacity() != expectedSize) {
+            throw new Exception("Error: Detector preprocessed buffer size " + buffer.capacity() + " != expected " + expectedSize);
+        }
+
+        Result result = new Result();
+        result.buffer = buffer;
+        result.targetW = targetW;
+        result.targetH = targetH;
+        result.planes = resized;
+        return result;
+    }
+
+    private static void writeToBuffer(ByteBuffer buffer, float value, DataType dtype, float scale, int zeroPoint) {
+        if (dtype == DataType.FLOAT32) {
+            buffer.putFloat(value);
+        } else if (dtype == DataType.UINT8) {
+            int quantized = Math.round(value / scale) + zeroPoint;
+            quantized = Math.max(0, Math.min(255, quantized));
+            buffer.put((byte) (quantized & 0xFF));
+        } else if (dtype == DataType.INT8) {
+            int quantized = Math.round(value / scale) + zeroPoint;
+            quantized = Math.max(-128, Math.min(127, quantized));
+            buffer.put((byte) quantized);
+        } else {
+            throw new IllegalArgumentException("Unsupported input data type: " + dtype);
+        }
+    }
+
+    private ByteBuffer preprocessRecognizerImage(ImagePlanes image, Rect box, int[] inputShape, DataType inputDtype, float scale, int zeroPoint, Integer overrideHeight, Integer overrideWidth, int widthDivisor) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Input shape must be 4D. Got: " + Arrays.toString(inputShape));
+        }
+
+        int batch = inputShape[0];
+        int d1 = inputShape[1];
+        int d2 = inputShape[2];
+        int d3 = inputShape[3];
+
+        String layout;
+        int channels, targetH, targetW;
+
+        if (d3 == 1 || d3 == 3) {
+            layout = "NHWC";
+            channels = d3;
+            targetH = d1;
+            targetW = d2;
+        } else if (d1 == 1 || d1 == 3) {
+            layout = "NCHW";
+            channels = d1;
+            targetH = d2;
+            targetW = d3;
+        } else {
+            layout = "NHWC";
+            channels = 3;
+            targetH = d1;
+            targetW = d2;
+        }
+
+        if (targetH <= 0) {
+            if (overrideHeight == null) {
+                throw new IllegalArgumentException("Dynamic height requires overrideHeight.");
+            }
+            targetH = overrideHeight;
+        }
+
+        if (targetW <= 0) {
+            int origW = box.width();
+            int origH = box.height();
+            int newW = (int) Math.ceil(origW * (targetH / (float) origH));
+            if (widthDivisor > 1) {
+                newW = (int) Math.ceil(newW / (float) widthDivisor) * widthDivisor;
+            }
+            targetW = newW;
+        }
+
+        // Gray models get the shared luminance plane, the same one the detector uses
+        ImagePlanes resized = image.resample(box.left, box.top, box.width(), box.height(), targetW, targetH, channels != 1);
+
+        byte[] lut = QuantizedOps.buildInputLut(inputDtype, scale, zeroPoint);
+
+        int elementSize = (inputDtype == DataType.FLOAT32) ? 4 : 1;
+        int bufferSize = batch * targetH * targetW * channels * elementSize;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.order(ByteOrder.nativeOrder());
+
+        if (layout.equals("NHWC")) {
+            for (int i = 0; i < targetH; i++) {
+                for (int j = 0; j < targetW; j++) {
+                    int index = i * targetW + j;
+                    if (channels == 1) {
+                        int l = resized.luma[index] & 0xFF;
+                        if (lut != null) {
+                            buffer.put(lut[l]);
+                        } else {
+                            writeToBuffer(buffer, l / 255f, inputDtype, scale, zeroPoint);
+                        }
+                        continue;
+                    }
+                    int r = resized.r[index] & 0xFF;
+                    int g = resized.g[index] & 0xFF;
+                    int b = resized.b[index] & 0xFF;
+
+                    if (lut != null) {
+                        buffer.put(lut[r]);
+                        buffer.put(lut[g]);
+                        buffer.put(lut[b]);
+                    } else {
+                        writeToBuffer(buffer, r / 255f, inputDtype, scale, zeroPoint);
+                        writeToBuffer(buffer, g / 255f, inputDtype, scale, zeroPoint);
+                        writeToBuffer(buffer, b / 255f, inputDtype, scale, zeroPoint);
+                    }
+                }
+            }
+        } else if (layout.equals("NCHW")) {
+            for (int c = 0; c < channels; c++) {
+                for (int i = 0; i < targetH; i++) {
+                    for (int j = 0; j < targetW; j++) {
+                        int index = i * targetW + j;
+                        byte[] plane = channels == 1 ? resized.luma : (c == 0) ? resized.r : (c == 1) ? resized.g : resized.b;
+                        int v = plane[index] & 0xFF;
+                        if (lut != null) {
+                            buffer.put(lut[v]);
+                        } else {
+                            writeToBuffer(buffer, v / 255f, inputDtype, scale, zeroPoint);
+                        }
+                    }
+                }
+            }
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+
+    private static int getNumBytesPerChannel(DataType dtype) {
+        switch (dtype) {
+            case FLOAT32:
+                return 4;
+            case UINT8:
+            case INT8:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported input data type: " + dtype);
+        }
+    }
+
+    // Runs the detector on a prepared input; the raw output keeps the tensor's dtype and byte layout
+    static ByteBuffer runDetectorRaw(Interpreter detector, ByteBuffer input) {
+        ByteBuffer raw = QuantizedOps.allocateOutput(detector.getOutputTensor(0));
+        detector.run(input, raw);
+        raw.rewind();
+        return raw;
+    }
+
+    /**
+     * Runs one detector pass over a region of the planes and returns the boxes relative to the
+     * region's origin. With a capture, the pass is recorded under its own prefix for replay.
+     */
+    public static List<Rect> runDetector(Interpreter detector, ImagePlanes image, Rect region, float textThreshold, float linkThreshold,
+                                         int minArea, PipelineCapture capture) throws Exception {
+        int[] detectorShape = detector.getInputTensor(0).shape();
+        DataType inputDtype = detector.getInputTensor(0).dataType();
+        Tensor.QuantizationParams inputQuant = detector.getInputTensor(0).quantizationParams();
+
+        Result detectorInput = preprocessDetectorImage(image, region, detectorShape, inputDtype, inputQuant);
+        Tensor outputTensor = detector.getOutputTensor(0);
+        ByteBuffer raw = runDetectorRaw(detector, detectorInput.buffer);
+        byte[][] mask = PipelineStages.thresholdDetectorOutput(raw, outputTensor.shape(), outputTensor.dataType(),
+                outputTensor.quantizationParams(), textThreshold, linkThreshold);
+        List<Box> boxes = PipelineStages.findConnectedBoxes(mask, minArea);
+
+        List<Rect> rects = new ArrayList<>(boxes.size());
+        for (Box box : boxes) {
+            rects.add(mapBoxMaskToOriginal(box, mask[0].length, mask.length,
+                    detectorInput.targetW, detectorInput.targetH, region.width(), region.height()));
+        }
+
+        String prefix = capture != null ? capture.beginPass(region.left, region.top, region.right, region.bottom,
+                detectorInput.targetW, detectorInput.targetH, textThreshold, linkThreshold, minArea) : null;
+        if (prefix != null) {
+            captureDetectorPass(capture, prefix, detectorInput, detectorShape, inputDtype, inputQuant, outputTensor, raw, mask, boxes);
+            List<int[]> rows = new ArrayList<>(rects.size());
+            for (Rect rect : rects) rows.add(new int[]{rect.left, rect.top, rect.right, rect.bottom});
+            capture.addBoxes(prefix + PipelineCapture.REGIONS, rows);
+        }
+        return rects;
+    }
+
+    // Stage inputs and outputs of one detector pass, so PipelineReplay can re-run them
+    private static void captureDetectorPass(PipelineCapture capture, String prefix, Result detectorInput, int[] detectorShape,
+                                            DataType inputDtype, Tensor.QuantizationParams inputQuant, Tensor outputTensor,
+                                            ByteBuffer raw, byte[][] mask, List<Box> boxes) {
+        capture.addPixels(prefix + PipelineCapture.PIXELS, detectorInput.planes.toArgb(), detectorInput.targetW, detectorInput.targetH);
+        capture.addTensor(prefix + PipelineCapture.DETECTOR_INPUT, inputDtype, detectorShape, inputQuant, detectorInput.buffer);
+        capture.addTensor(prefix + PipelineCapture.DETECTOR_OUTPUT, outputTensor.dataType(), outputTensor.shape(), outputTensor.quantizationParams(), raw);
+        capture.addMask(prefix + PipelineCapture.MASK, mask);
+        List<int[]> rows = new ArrayList<>(boxes.size());
+        for (Box box : boxes) rows.add(new int[]{box.x1, box.y1, box.x2, box.y2});
+        capture.addBoxes(prefix + PipelineCapture.BOXES, rows);
+    }
+
+    public String runRecognizer(Interpreter interpreter,
+                                ImagePlanes image,
+                                Rect box,
+                                int[] recInputShape,
+                                DataType recInputDtype,
+                                Tensor.QuantizationParams recInputQuant,
+                                Integer overrideHeight,
+                                Integer overrideWidth,
+                                int widthDivisor,
+                                List<String> labels,
+                                Integer blankIndex) {
+
+        float scale = recInputQuant != null ? recInputQuant.getScale() : 1.0f;
+        int zeroPoint = recInputQuant != null ? recInputQuant.getZeroPoint() : 0;
+
+        ByteBuffer inputBuffer = preprocessRecognizerImage(
+                image, box, recInputShape, recInputDtype, scale, zeroPoint,
+                overrideHeight, overrideWidth, widthDivisor);
+
+        if (verboseLogging) printByteBuffer(inputBuffer, recInputDtype, 20);
+
+        // Run inference
+        Tensor outputTensor = interpreter.getOutputTensor(0);
+        int[] outputShape = outputTensor.shape();
+        DataType outputDtype = outputTensor.dataType();
+
+        if (blankIndex == null) {
+            blankIndex = labels.size() - 1;
+        }
+
+        if (QuantizedOps.isQuantized(outputDtype)) {
+            // Argmax over the raw quantized logits, no dequantization needed
+            ByteBuffer raw = QuantizedOps.allocateOutput(outputTensor);
+            interpreter.run(inputBuffer, raw);
+            String text = QuantizedOps.decodeCTCGreedy(raw, outputShape, outputDtype, labels, blankIndex);
+            if (verboseLogging) Log.d("RECOGNIZER_TEXT", "Decoded text: '" + text + "'");
+            return text;
+        }
+
+        // Create output array based on model output shape
+        float[][][] output = new float[outputShape[0]][outputShape[1]][outputShape[2]];
+        interpreter.run(inputBuffer, output);
+
+        if (verboseLogging) Log.v("Outtt", Arrays.deepToString(output));
+        // Optional: Output stats
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE, sum = 0;
+        int count = 0;
+
+        for (float[][] row : output) {
+            for (float[] timestep : row) {
+                for (float val : timestep) {
+                    min = Math.min(min, val);
+                    max = Math.max(max, val);
+                    sum += val;
+                    count++;
+                }
+            }
+        }
+
+        float mean = count > 0 ? sum / count : 0;
+        if (verboseLogging) Log.d("RECOGNIZER_STATS", String.format("Output shape: %s, min=%.6f, max=%.6f, mean=%.6f",
+                Arrays.toString(outputShape), min, max, mean));
+
+        // Decode using greedy CTC
+        String text = PipelineStages.decodeCTCGreedy(output, labels, blankIndex);
+        if (verboseLogging) Log.d("RECOGNIZER_TEXT", "Decoded text: '" + text + "'");
+
+        return text;
+    }
+
+
+    // Recognizes a single region of a frame's planes, used when a tracked box's content changed
+    String recognizeRegion(ImagePlanes planes, Rect box) throws Exception {
+        ModelSet set = models;
+        if (set.recognizerBuckets != null) {
+            return set.recognizerBuckets.recognize(planes, box, set.labels, set.blankIndex);
+        }
+        Tensor input = set.recognizer.getInputTensor(0);
+        return runRecognizer(set.recognizer, planes, box, input.shape(), input.dataType(), input.quantizationParams(), options.recognizerHeight, null, 1, set.labels, set.blankIndex);
+    }
+
+    /**
+     * Stops between stages and crops once the budget is cancelled or expired; recognized lines
+     * so far are returned. Boxes, each recognized line and completion go to the listener if
+     * any. recycle hands the bitmap to the pipeline, which frees it as soon as the planes are
+     * built; a caller's bitmap stays accounted as decoded until the run ends.
+     */
+    List<TextLine> runPipeline(Bitmap bitmap, boolean recycle, RunBudget budget, OcrListener listener) throws Exception {
+        ModelSet set = models;
+        memoryBudget.beginRun();
+        long imageBytes = bitmap.getByteCount();
+        memoryBudget.acquire(MemoryBudget.DECODED, imageBytes);
+        boolean decodedHeld = true;
+        long planeBytes = 0;
+        try {
+            ImagePlanes planes = decodePlanes(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()), set.readsRgb);
+            // Every stage after this samples the planes; the bitmap is not read again
+            if (recycle) {
+                bitmap.recycle();
+                memoryBudget.release(MemoryBudget.DECODED, imageBytes);
+                decodedHeld = false;
+            }
+            // The half-resolution level is built by the first large reduction, so it is counted up front
+            planeBytes = planes.byteCount() + planes.halfByteCount();
+            memoryBudget.acquire(MemoryBudget.PLANES, planeBytes);
+            return runStages(set, planes, budget, listener);
+        } finally {
+            memoryBudget.release(MemoryBudget.PLANES, planeBytes);
+            if (decodedHeld) memoryBudget.release(MemoryBudget.DECODED, imageBytes);
+            if (recycle) bitmap.recycle();
+            Log.d("MEMORY", memoryBudget.report());
+        }
+    }
+
+    private List<TextLine> runStages(ModelSet set, ImagePlanes planes, RunBudget budget, OcrListener listener) throws Exception {
+        long startTime = System.nanoTime();
+        int origW = planes.width;
+        int origH = planes.height;
+        Rect full = new Rect(0, 0, origW, origH);
+        float textThreshold = options.textThreshold;
+        float linkThreshold = options.linkThreshold;
+        List<Rect> regions = new ArrayList<>();
+        PipelineCapture capture = options.captureDir != null ? newCapture(origW, origH) : null;
+
+        if (set.tiledDetector != null && set.tiledDetector.shouldTile(planes)) {
+            // Each tile worker holds one detector input and output at a time, so a tight budget runs fewer
+            long tileInputBytes = set.detector.getInputTensor(0).numBytes();
+            long tileOutputBytes = set.detector.getOutputTensor(0).numBytes();
+            int workers = set.tiledDetector.setWorkerLimit(
+                    memoryBudget.affordableWorkers(set.tiledDetector.getConcurrency(), tileInputBytes + tileOutputBytes));
+            long inputBytes = workers * tileInputBytes;
+            long outputBytes = workers * tileOutputBytes;
+            memoryBudget.acquire(MemoryBudget.DETECTOR_INPUT, inputBytes);
+            memoryBudget.acquire(MemoryBudget.DETECTOR_OUTPUT, outputBytes);
+            try {
+                if (set.cascadeDetector != null) {
+                    if (capture != null) capture.detectionPath = "cascade";
+                    regions.addAll(set.cascadeDetector.detect(planes, budget, capture));
+                } else {
+                    if (capture != null) capture.detectionPath = "tiled";
+                    regions.addAll(set.tiledDetector.detect(planes, budget, capture));
+                }
+            } finally {
+                memoryBudget.release(MemoryBudget.DETECTOR_INPUT, inputBytes);
+                memoryBudget.release(MemoryBudget.DETECTOR_OUTPUT, outputBytes);
+            }
+        } else {
+            // 1. Detector model metadata
+            int[] detectorShape = set.detector.getInputTensor(0).shape();  // [1,H,W,C] or [1,C,H,W]
+            DataType inputDtype = set.detector.getInputTensor(0).dataType();
+            Tensor.QuantizationParams inputQuant = set.detector.getInputTensor(0).quantizationParams();
+
+            // 2. Preprocess image
+            Result detectorInput = preprocessDetectorImage(planes, full, detectorShape, inputDtype, inputQuant);
+            long inputBytes = detectorInput.buffer.capacity();
+            long outputBytes = set.detector.getOutputTensor(0).numBytes();
+            memoryBudget.acquire(MemoryBudget.DETECTOR_INPUT, inputBytes);
+            memoryBudget.acquire(MemoryBudget.DETECTOR_OUTPUT, outputBytes);
+
+            // 3. Inference and score/link thresholding (float or quantized output)
+            Tensor outputTensor = set.detector.getOutputTensor(0);
+            byte[][] mask;
+            List<Box> boxes;
+            try {
+                ByteBuffer raw = runDetectorRaw(set.detector, detectorInput.buffer);
+                mask = PipelineStages.thresholdDetectorOutput(raw, outputTensor.shape(), outputTensor.dataType(),
+                        outputTensor.quantizationParams(), textThreshold, linkThreshold);
+                boxes = PipelineStages.findConnectedBoxes(mask, options.minBoxArea);
+                if (capture != null) {
+                    capture.resizedWidth = detectorInput.targetW;
+                    capture.resizedHeight = detectorInput.targetH;
+                    captureDetectorPass(capture, "", detectorInput, detectorShape, inputDtype, inputQuant, outputTensor, raw, mask, boxes);
+                }
+            } finally {
+                memoryBudget.release(MemoryBudget.DETECTOR_INPUT, inputBytes);
+                memoryBudget.release(MemoryBudget.DETECTOR_OUTPUT, outputBytes);
+            }
+
+            int resizedW = detectorInput.targetW;
+            int resizedH = detectorInput.targetH;
+            int maskW = mask[0].length;
+            int maskH = mask.length;
+
+            if (verboseLogging) {
+                Log.d("Input shape", Arrays.toString(detectorShape));
+                Log.d("Buffer size", String.valueOf(detectorInput.buffer.capacity()));
+                printByteBuffer(detectorInput.buffer, inputDtype, 20);
+                Log.d("MASK_DEBUG", "Detector mask shape: (" + maskH + "," + maskW + "), resized image: (" + resizedW + "," + resizedH + "), original: (" + origW + "," + origH + ")");
+                Log.d("BOXES", "Found " + boxes.size() + " regions in mask coords.");
+            }
+            for (Box box : boxes) {
+                if (verboseLogging) Log.d("BOX_COORDS", box.toString());
+                regions.add(mapBoxMaskToOriginal(box, maskW, maskH, resizedW, resizedH, origW, origH));
+            }
+        }
+
+        long detectMs = (System.nanoTime() - startTime) / 1_000_000;
+        if (listener != null) listener.onBoxes(new ArrayList<>(regions));
+
+        if (budget.shouldStop()) {
+            budget.markSkipped(regions.size());
+            List<TextLine> none = new ArrayList<>();
+            if (capture != null) writeCapture(capture, regions, none, detectMs, detectMs);
+            if (listener != null) listener.onComplete(none, detectMs, detectMs, budget.getSkipped());
+            return none;
+        }
+
+        // With a deadline, the largest boxes are recognized first so a cut-off loses the least text
+        if (budget.hasDeadline()) {
+            Collections.sort(regions, (a, b) -> Long.compare((long) b.width() * b.height(), (long) a.width() * a.height()));
+        }
+
+        // Recognizer metadata
+        int[] recShape = set.recognizer.getInputTensor(0).shape();
+        DataType recDtype = set.recognizer.getInputTensor(0).dataType();
+        Tensor.QuantizationParams recQuant = set.recognizer.getInputTensor(0).quantizationParams();
+
+        int overrideHeight = options.recognizerHeight;
+        int widthDivisor = 1;            // used for padding width if required
+
+        List<TextLine> lines = new ArrayList<>(regions.size());
+        cropPrefilter.beginRun();
+        // The model set holds the bucket buffers; a plain recognizer allocates its buffers per crop
+        long recognizerBytes = set.recognizerBuckets != null
+                ? set.recognizerBuckets.getBufferBytes()
+                : set.recognizer.getInputTensor(0).numBytes() + (long) set.recognizer.getOutputTensor(0).numBytes();
+        memoryBudget.acquire(MemoryBudget.RECOGNIZER, recognizerBytes);
+        try {
+            for (int i = 0; i < regions.size(); i++) {
+                if (budget.shouldStop()) {
+                    budget.markSkipped(regions.size() - i);
+                    Log.w("BUDGET", (budget.isCancelled() ? "Cancelled" : "Deadline reached") + ", skipping " + (regions.size() - i) + " of " + regions.size() + " crops");
+                    break;
+                }
+                Rect boxOrig = regions.get(i);
+                int x1 = boxOrig.left;
+                int y1 = boxOrig.top;
+                int x2 = boxOrig.right;
+                int y2 = boxOrig.bottom;
+
+                // Too-small boxes and rules are judged by the prefilter, so they show up in its counts
+                if (!cropPrefilter.accept(planes, boxOrig)) {
+                    if (verboseLogging) Log.v("CROP", "Prefilter rejected region: (" + x1 + "," + y1 + "," + x2 + "," + y2 + ")");
+                    continue;
+                }
+
+                if (x2 > x1 && y2 > y1) {
+                    // Crops are resampled straight from the planes, no crop bitmap is created
+                    String result = set.recognizerBuckets != null
+                            ? set.recognizerBuckets.recognize(planes, boxOrig, set.labels, set.blankIndex)
+                            : runRecognizer(set.recognizer, planes, boxOrig, recShape, recDtype, recQuant, overrideHeight, null, widthDivisor, set.labels, set.blankIndex);
+
+                    if (verboseLogging) Log.v("RESULT", result);
+                    TextLine line = new TextLine(boxOrig, result);
+                    lines.add(line);
+                    if (listener != null) listener.onLine(line, i, regions.size());
+
+                } else {
+                    Log.w("CROP", "Invalid crop size: (" + x1 + "," + y1 + "," + x2 + "," + y2 + ")");
+                }
+            }
+        } finally {
+            memoryBudget.release(MemoryBudget.RECOGNIZER, recognizerBytes);
+        }
+
+        if (verboseLogging) {
+            if (set.recognizerBuckets != null) set.recognizerBuckets.logStats();
+            Log.v("PREFILTER", cropPrefilter.statsReport());
+            Log.v("recShape", Arrays.toString(recShape));
+            Log.v("recDtype", recDtype.toString());
+            Log.v("recQuant", "scale=" + recQuant.getScale() + ", zeroPoint=" + recQuant.getZeroPoint());
+        }
+        // Streamed lines came largest first under a deadline; the final result reads top to bottom
+        sortReadingOrder(lines);
+        long totalMs = (System.nanoTime() - startTime) / 1_000_000;
+        // A run cut short by its budget is not comparable with complete ones
+        if (budget.getSkipped() == 0) recordLatency(set, detectMs, totalMs);
+        if (capture != null) writeCapture(capture, regions, lines, detectMs, totalMs);
+        if (listener != null) listener.onComplete(lines, detectMs, totalMs, budget.getSkipped());
+        return lines;
+    }
+
+    /**
+     * Sorts lines top to bottom, and left to right within a row. A line belongs to the row
+     * started by an earlier line when its vertical centre falls inside that line's box.
+     */
+    static void sortReadingOrder(List<TextLine> lines) {
+        lines.sort((a, b) -> Integer.compare(a.box.top, b.box.top));
+        List<TextLine> sorted = new ArrayList<>(lines.size());
+        int i = 0;
+        while (i < lines.size()) {
+            Rect first = lines.get(i).box;
+            int end = i + 1;
+            while (end < lines.size() && lines.get(end).box.centerY() < first.bottom) {
+                end++;
+            }
+            List<TextLine> row = new ArrayList<>(lines.subList(i, end));
+            row.sort((a, b) -> Integer.compare(a.box.left, b.box.left));
+            sorted.addAll(row);
+            i = end;
+        }
+        lines.clear();
+        lines.addAll(sorted);
+    }
+
+    private PipelineCapture newCapture(int origW, int origH) {
+        PipelineCapture capture = new PipelineCapture();
+        capture.imageWidth = origW;
+        capture.imageHeight = origH;
+        capture.textThreshold = options.textThreshold;
+        capture.linkThreshold = options.linkThreshold;
+        capture.minBoxArea = options.minBoxArea;
+        return capture;
+    }
+
+    // Only runs at least captureMinMs long are kept, so capture can stay on to catch slow images in the field
+    private void writeCapture(PipelineCapture capture, List<Rect> regions, List<TextLine> lines, long detectMs, long totalMs) {
+        if (totalMs < options.captureMinMs) return;
+        capture.detectMs = detectMs;
+        capture.totalMs = totalMs;
+        List<int[]> rows = new ArrayList<>(regions.size());
+        for (Rect region : regions) rows.add(new int[]{region.left, region.top, region.right, region.bottom});
+        capture.addBoxes(PipelineCapture.REGIONS, rows);
+        StringBuilder text = new StringBuilder();
+        for (TextLine line : lines) text.append(line.text).append('\n');
+        capture.addText(PipelineCapture.LINES, text.toString());
+
+        File dir = new File(options.captureDir);
+        File file = new File(dir, "capture-" + System.currentTimeMillis() + "-" + (captureCount++) + ".ocap");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            capture.write(file);
+            Log.i(TAG, "Captured " + totalMs + " ms run to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write capture: " + e.getMessage());
+        }
+    }
+
+
+    public static Rect mapBoxMaskToOriginal(Box box, int maskW, int maskH, int resizedW, int resizedH, int origW, int origH) {
+        int[] mapped = PipelineStages.mapBoxToOriginal(box, maskW, maskH, resizedW, resizedH, origW, origH);
+        return new Rect(mapped[0], mapped[1], mapped[2], mapped[3]);
+    }
+
+
+    private void printByteBuffer(ByteBuffer buffer, DataType dtype, int maxElements) {
+        buffer.rewind(); // Start from beginning
+        int count = 0;
+
+        if (dtype == DataType.FLOAT32) {
+            while (buffer.remaining() >= 4 && count < maxElements) {
+                float val = buffer.getFloat();
+                Log.d("BUFFER_FLOAT32", "val = " + val);
+                count++;
+            }
+        } else if (dtype == DataType.UINT8 || dtype == DataType.INT8) {
+            while (buffer.remaining() >= 1 && count < maxElements) {
+                byte b = buffer.get();
+                Log.d("BUFFER_INT8", "val = " + (b & 0xFF)); // Use & 0xFF for unsigned
+                count++;
+            }
+        } else {
+            Log.e("BUFFER_PRINT", "Unsupported dtype: " + dtype);
+        }
+
+        buffer.rewind(); // Reset after reading
+    }
+}
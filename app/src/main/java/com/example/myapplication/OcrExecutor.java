@@ -0,0 +1,221 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Owns the single worker thread that may touch the detector and recognizer interpreters.
+ *
+ * Queued requests run in priority order, so an interactive request waits at most for the one
+ * background request already running. Requests with the same key that are still queued or
+ * running share one computation; the computation is cancelled only once every caller
+ * cancelled its future. Cancelling a running request stops it at its next budget check.
+ * Streams such as camera frames use submitLatest instead, which keeps only the newest waiting
+ * request of a slot so a fast producer cannot queue work (and bitmaps) without bound.
+ */
+public class OcrExecutor {
+    private static final String TAG = "OcrExecutor";
+
+    // Declaration order is scheduling order
+    public enum Priority {
+        INTERACTIVE,
+        FRAME,          // continuous camera frames: behind a user pick, ahead of batch work
+        BACKGROUND
+    }
+
+    public interface Task<T> {
+        T run(RunBudget budget) throws Exception;
+    }
+
+    private static class Job<T> implements Comparable<Job<?>> {
+        final String key;
+        final long sequence;
+        final Task<T> task;
+        final RunBudget budget;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        Priority priority;
+        int subscribers;
+
+        Job(String key, long sequence, Priority priority, long budgetMs, Task<T> task) {
+            this.key = key;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.budget = new RunBudget(budgetMs);
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityBlockingQueue<Job<?>> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Job<?>> inFlight = new HashMap<>();
+    private final Thread worker;
+    private Job<?> running;
+    private long nextSequence;
+    private int coalesced;
+    private int superseded;
+    private boolean shutdown;
+
+    public OcrExecutor() {
+        worker = new Thread(this::loop, "ocr-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a task. A non-null key coalesces it with a queued or running task of the same key;
+     * the shared task is promoted if this request has a higher priority, and then also runs
+     * within this request's budget. budgetMs <= 0 means no deadline, and the clock starts when
+     * the task starts running.
+     */
+    public synchronized <T> CompletableFuture<T> submit(String key, Priority priority, long budgetMs, Task<T> task) {
+        if (shutdown) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RejectedExecutionException("OcrExecutor is shut down"));
+            return rejected;
+        }
+
+        if (key != null) {
+            @SuppressWarnings("unchecked")
+            Job<T> existing = (Job<T>) inFlight.get(key);
+            if (existing != null && !existing.result.isDone()) {
+                if (priority.compareTo(existing.priority) < 0) {
+                    // The promoting caller's deadline applies too, also to a run already started
+                    existing.budget.tighten(budgetMs);
+                    if (queue.remove(existing)) {
+                        // Re-inserted so the queue orders it by the new priority
+                        existing.priority = priority;
+                        queue.add(existing);
+                    } else {
+                        existing.priority = priority;
+                    }
+                }
+                coalesced++;
+                Log.d(TAG, "Coalesced request " + key);
+                return subscribe(existing);
+            }
+        }
+
+        Job<T> job = new Job<>(key, nextSequence++, priority, budgetMs, task);
+        if (key != null) {
+            inFlight.put(key, job);
+            job.result.whenComplete((value, error) -> {
+                synchronized (this) {
+                    if (inFlight.get(key) == job) inFlight.remove(key);
+                }
+            });
+        }
+        CompletableFuture<T> view = subscribe(job);
+        queue.add(job);
+        return view;
+    }
+
+    /**
+     * Queues a task in place of a still-queued task of the same slot, whose caller sees its
+     * future cancelled; a task of the slot that is already running is left to finish. At most
+     * one task per slot therefore waits behind the running one.
+     */
+    public synchronized <T> CompletableFuture<T> submitLatest(String slot, Priority priority, long budgetMs, Task<T> task) {
+        Job<?> waiting = inFlight.get(slot);
+        if (waiting != null && waiting != running && queue.remove(waiting)) {
+            waiting.budget.cancel();
+            waiting.result.cancel(false);
+            superseded++;
+        }
+        inFlight.remove(slot);
+        return submit(slot, priority, budgetMs, task);
+    }
+
+    // Each caller gets its own future, so one caller cancelling does not fail the others
+    private <T> CompletableFuture<T> subscribe(Job<T> job) {
+        job.subscribers++;
+        CompletableFuture<T> view = new CompletableFuture<>();
+        job.result.whenComplete((value, error) -> {
+            if (error != null) {
+                view.completeExceptionally(error);
+            } else {
+                view.complete(value);
+            }
+        });
+        view.whenComplete((value, error) -> {
+            if (view.isCancelled()) unsubscribe(job);
+        });
+        return view;
+    }
+
+    private synchronized void unsubscribe(Job<?> job) {
+        if (job.result.isDone() || --job.subscribers > 0) return;
+        job.budget.cancel();
+        job.result.cancel(false);
+        queue.remove(job);
+    }
+
+    private void loop() {
+        while (true) {
+            Job<?> job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(job);
+        }
+    }
+
+    private <T> void run(Job<T> job) {
+        synchronized (this) {
+            if (job.result.isDone()) return;
+            running = job;
+        }
+        job.budget.start();
+        try {
+            job.result.complete(job.task.run(job.budget));
+        } catch (Exception e) {
+            job.result.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                running = null;
+            }
+        }
+    }
+
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    // Requests that were served by an already queued or running computation
+    public synchronized int getCoalescedCount() {
+        return coalesced;
+    }
+
+    // Queued stream requests replaced by a newer one before they ran
+    public synchronized int getSupersededCount() {
+        return superseded;
+    }
+
+    public void shutdown() {
+        List<Job<?>> pending;
+        synchronized (this) {
+            shutdown = true;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            if (running != null) pending.add(running);
+        }
+        for (Job<?> job : pending) {
+            job.budget.cancel();
+            job.result.cancel(false);
+        }
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+
+import java.util.List;
+
+/**
+ * Progress events of one pipeline run, delivered on the OCR worker thread in this order:
+ * boxes once detection finishes, one line per recognized crop, then completion.
+ */
+public interface OcrListener {
+    void onBoxes(List<Rect> boxes);
+
+    void onLine(TextLine line, int index, int total);
+
+    // skipped: crops left unrecognized because the run was cancelled or ran out of time
+    void onComplete(List<TextLine> lines, long detectMs, long totalMs, int skipped);
+}
@@ -0,0 +1,269 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable configuration shared by every caller of {@link OcrEngine}. Build one with
+ * {@link Builder}; an engine keeps the options it was created with for its whole lifetime.
+ */
+public final class OcrOptions {
+    public final String detectorModel;
+    public final String recognizerModel;
+    public final String labelsAsset;
+    // Directory of versioned model sets (one subdirectory each); null uses only the bundled assets
+    public final String modelsDir;
+
+    public final float textThreshold;
+    public final float linkThreshold;
+    public final int minBoxArea;           // in detector mask cells
+    public final int recognizerHeight;     // used when the recognizer height is dynamic
+
+    // Tiled detection for scans much larger than the detector input
+    public final boolean tiledDetection;
+    public final int tileOverlap;
+    public final int tileConcurrency;
+    // Coarse pass first, high-res detection only on text-bearing regions
+    public final boolean cascadeDetection;
+    // Snap dynamic recognizer widths to these sizes so tensors are not reallocated per crop
+    private final int[] recognizerWidthBuckets;
+
+    // Per-image latency budget for interactive requests; remaining crops are dropped after it
+    public final long interactiveBudgetMs;
+    // Deadline of one camera frame; a frame that overruns keeps what it recognized and re-detects next time
+    public final long frameBudgetMs;
+    public final long memoryBudgetBytes;
+    public final float decodeShare;
+    // Per-tensor debug dumps; never applied to background requests
+    public final boolean verboseLogging;
+    // Directory for PipelineCapture files, null to disable; only runs of at least captureMinMs are written
+    public final String captureDir;
+    public final long captureMinMs;
+    // A swapped-in version whose mean latency over its first rollbackMinSamples runs exceeds the
+    // previous version's by rollbackFactor is rolled back; 0 samples disables the check
+    public final int rollbackMinSamples;
+    public final float rollbackFactor;
+
+    private OcrOptions(Builder builder) {
+        detectorModel = builder.detectorModel;
+        recognizerModel = builder.recognizerModel;
+        labelsAsset = builder.labelsAsset;
+        modelsDir = builder.modelsDir;
+        textThreshold = builder.textThreshold;
+        linkThreshold = builder.linkThreshold;
+        minBoxArea = builder.minBoxArea;
+        recognizerHeight = builder.recognizerHeight;
+        tiledDetection = builder.tiledDetection;
+        tileOverlap = builder.tileOverlap;
+        tileConcurrency = builder.tileConcurrency;
+        cascadeDetection = builder.cascadeDetection;
+        recognizerWidthBuckets = builder.recognizerWidthBuckets.clone();
+        interactiveBudgetMs = builder.interactiveBudgetMs;
+        frameBudgetMs = builder.frameBudgetMs;
+        memoryBudgetBytes = builder.memoryBudgetBytes;
+        decodeShare = builder.decodeShare;
+        verboseLogging = builder.verboseLogging;
+        captureDir = builder.captureDir;
+        captureMinMs = builder.captureMinMs;
+        rollbackMinSamples = builder.rollbackMinSamples;
+        rollbackFactor = builder.rollbackFactor;
+    }
+
+    public static OcrOptions defaults() {
+        return new Builder().build();
+    }
+
+    public int[] getRecognizerWidthBuckets() {
+        return recognizerWidthBuckets.clone();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.detectorModel = detectorModel;
+        builder.recognizerModel = recognizerModel;
+        builder.labelsAsset = labelsAsset;
+        builder.modelsDir = modelsDir;
+        builder.textThreshold = textThreshold;
+        builder.linkThreshold = linkThreshold;
+        builder.minBoxArea = minBoxArea;
+        builder.recognizerHeight = recognizerHeight;
+        builder.tiledDetection = tiledDetection;
+        builder.tileOverlap = tileOverlap;
+        builder.tileConcurrency = tileConcurrency;
+        builder.cascadeDetection = cascadeDetection;
+        builder.recognizerWidthBuckets = recognizerWidthBuckets.clone();
+        builder.interactiveBudgetMs = interactiveBudgetMs;
+        builder.frameBudgetMs = frameBudgetMs;
+        builder.memoryBudgetBytes = memoryBudgetBytes;
+        builder.decodeShare = decodeShare;
+        builder.verboseLogging = verboseLogging;
+        builder.captureDir = captureDir;
+        builder.captureMinMs = captureMinMs;
+        builder.rollbackMinSamples = rollbackMinSamples;
+        builder.rollbackFactor = rollbackFactor;
+        return builder;
+    }
+
+    // Value equality, so a screen recreated on rotation can pass the same options again
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OcrOptions)) return false;
+        OcrOptions other = (OcrOptions) o;
+        return Objects.equals(detectorModel, other.detectorModel)
+                && Objects.equals(recognizerModel, other.recognizerModel)
+                && Objects.equals(labelsAsset, other.labelsAsset)
+                && Objects.equals(modelsDir, other.modelsDir)
+                && textThreshold == other.textThreshold
+                && linkThreshold == other.linkThreshold
+                && minBoxArea == other.minBoxArea
+                && recognizerHeight == other.recognizerHeight
+                && tiledDetection == other.tiledDetection
+                && tileOverlap == other.tileOverlap
+                && tileConcurrency == other.tileConcurrency
+                && cascadeDetection == other.cascadeDetection
+                && Arrays.equals(recognizerWidthBuckets, other.recognizerWidthBuckets)
+                && interactiveBudgetMs == other.interactiveBudgetMs
+                && frameBudgetMs == other.frameBudgetMs
+                && memoryBudgetBytes == other.memoryBudgetBytes
+                && decodeShare == other.decodeShare
+                && verboseLogging == other.verboseLogging
+                && Objects.equals(captureDir, other.captureDir)
+                && captureMinMs == other.captureMinMs
+                && rollbackMinSamples == other.rollbackMinSamples
+                && rollbackFactor == other.rollbackFactor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(detectorModel, recognizerModel, labelsAsset, modelsDir, textThreshold, linkThreshold,
+                minBoxArea, tiledDetection, cascadeDetection, Arrays.hashCode(recognizerWidthBuckets));
+    }
+
+    @Override
+    public String toString() {
+        return "OcrOptions{detector=" + detectorModel + ", recognizer=" + recognizerModel
+                + ", modelsDir=" + modelsDir
+                + ", thresholds=" + textThreshold + "/" + linkThreshold
+                + ", tiled=" + tiledDetection + ", cascade=" + cascadeDetection
+                + ", buckets=" + Arrays.toString(recognizerWidthBuckets)
+                + ", budgetMs=" + interactiveBudgetMs + ", frameBudgetMs=" + frameBudgetMs + ", memoryBudget=" + memoryBudgetBytes + "}";
+    }
+
+    public static class Builder {
+        private String detectorModel = "EasyOCR_EasyOCRDetector.tflite";
+        private String recognizerModel = "EasyOCR_EasyOCRRecognizer.tflite";
+        private String labelsAsset = "labels.txt";
+        private String modelsDir = null;
+        private float textThreshold = 0.7f;
+        private float linkThreshold = 0.4f;
+        private int minBoxArea = 10;
+        private int recognizerHeight = 32;
+        private boolean tiledDetection = true;
+        private int tileOverlap = 64;
+        private int tileConcurrency = 2;
+        private boolean cascadeDetection = true;
+        private int[] recognizerWidthBuckets = {64, 128, 256, 512, 1024};
+        private long interactiveBudgetMs = 5000;
+        private long frameBudgetMs = 300;
+        // Half the heap for decoded images, tensors and crops; a single decode may take half of what is left
+        private long memoryBudgetBytes = Runtime.getRuntime().maxMemory() / 2;
+        private float decodeShare = 0.5f;
+        private boolean verboseLogging = true;
+        private String captureDir = null;
+        private long captureMinMs = 0;
+        private int rollbackMinSamples = 20;
+        private float rollbackFactor = 1.5f;
+
+        public Builder setModels(String detectorModel, String recognizerModel, String labelsAsset) {
+            this.detectorModel = detectorModel;
+            this.recognizerModel = recognizerModel;
+            this.labelsAsset = labelsAsset;
+            return this;
+        }
+
+        public Builder setModelsDir(String modelsDir) {
+            this.modelsDir = modelsDir;
+            return this;
+        }
+
+        public Builder setThresholds(float textThreshold, float linkThreshold) {
+            this.textThreshold = textThreshold;
+            this.linkThreshold = linkThreshold;
+            return this;
+        }
+
+        public Builder setMinBoxArea(int minBoxArea) {
+            this.minBoxArea = minBoxArea;
+            return this;
+        }
+
+        public Builder setRecognizerHeight(int recognizerHeight) {
+            this.recognizerHeight = recognizerHeight;
+            return this;
+        }
+
+        public Builder setTiledDetection(boolean tiledDetection, int tileOverlap, int tileConcurrency) {
+            this.tiledDetection = tiledDetection;
+            this.tileOverlap = tileOverlap;
+            this.tileConcurrency = tileConcurrency;
+            return this;
+        }
+
+        public Builder setCascadeDetection(boolean cascadeDetection) {
+            this.cascadeDetection = cascadeDetection;
+            return this;
+        }
+
+        public Builder setRecognizerWidthBuckets(int... widths) {
+            this.recognizerWidthBuckets = widths.clone();
+            return this;
+        }
+
+        public Builder setInteractiveBudgetMs(long interactiveBudgetMs) {
+            this.interactiveBudgetMs = interactiveBudgetMs;
+            return this;
+        }
+
+        public Builder setFrameBudgetMs(long frameBudgetMs) {
+            this.frameBudgetMs = frameBudgetMs;
+            return this;
+        }
+
+        public Builder setMemoryBudget(long memoryBudgetBytes, float decodeShare) {
+            this.memoryBudgetBytes = memoryBudgetBytes;
+            this.decodeShare = decodeShare;
+            return this;
+        }
+
+        public Builder setVerboseLogging(boolean verboseLogging) {
+            this.verboseLogging = verboseLogging;
+            return this;
+        }
+
+        public Builder setCapture(String captureDir, long captureMinMs) {
+            this.captureDir = captureDir;
+            this.captureMinMs = captureMinMs;
+            return this;
+        }
+
+        public Builder setRollback(int rollbackMinSamples, float rollbackFactor) {
+            this.rollbackMinSamples = rollbackMinSamples;
+            this.rollbackFactor = rollbackFactor;
+            return this;
+        }
+
+        public OcrOptions build() {
+            if (recognizerWidthBuckets.length == 0) {
+                throw new IllegalArgumentException("At least one recognizer width bucket is required");
+            }
+            if (tileConcurrency < 1) {
+                throw new IllegalArgumentException("tileConcurrency must be >= 1, got " + tileConcurrency);
+            }
+            if (rollbackMinSamples > 0 && rollbackFactor <= 1f) {
+                throw new IllegalArgumentException("rollbackFactor must be > 1, got " + rollbackFactor);
+            }
+            return new OcrOptions(this);
+        }
+    }
+}
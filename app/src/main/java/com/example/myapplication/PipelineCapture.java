@@ -0,0 +1,353 @@
+package com.example.myapplication;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary record of one pipeline run: the resized detector pixels, the detector input and raw
+ * output tensors, the mask, the mask boxes, the final regions and the recognized text, each
+ * with its dtype, shape and quantization. PipelineReplay re-runs the stages from it without
+ * a device or the models.
+ *
+ * A single-pass run stores its detector stages under the plain section names. Tiled and
+ * cascade runs store each detector pass (the coarse pass, then the tiles, up to MAX_PASSES)
+ * under a "pass<n>/" prefix together with a pass section holding the pass's region, detector
+ * size, thresholds and minimum box area.
+ *
+ * File layout (big-endian framing, tensor payloads in the recorded byte order):
+ * magic "OCAP", version, header fields, then sections of
+ * name, dtype, rank, shape, scale, zero point, byte length, bytes; an empty name ends the file.
+ */
+public class PipelineCapture {
+    private static final int MAGIC = 0x4F434150; // "OCAP"
+    private static final int VERSION = 1;
+
+    // Section dtype for UTF-8 text; every other section uses a DataType name
+    public static final String TEXT = "TEXT";
+
+    public static final String PIXELS = "pixels";
+    public static final String DETECTOR_INPUT = "detector_input";
+    public static final String DETECTOR_OUTPUT = "detector_output";
+    public static final String MASK = "mask";
+    public static final String BOXES = "boxes";
+    public static final String REGIONS = "regions";
+    public static final String LINES = "lines";
+    public static final String PASS = "pass";
+
+    // Tiled runs can have hundreds of tiles; only the first passes are kept
+    public static final int MAX_PASSES = 8;
+
+    // One detector pass; boxes are mapped into the pass region, whose origin is left, top
+    public static class Pass {
+        public final String prefix;
+        public final int left;
+        public final int top;
+        public final int right;
+        public final int bottom;
+        public final int resizedWidth;
+        public final int resizedHeight;
+        public final float textThreshold;
+        public final float linkThreshold;
+        public final int minBoxArea;
+
+        Pass(String prefix, int left, int top, int right, int bottom, int resizedWidth, int resizedHeight,
+             float textThreshold, float linkThreshold, int minBoxArea) {
+            this.prefix = prefix;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.resizedWidth = resizedWidth;
+            this.resizedHeight = resizedHeight;
+            this.textThreshold = textThreshold;
+            this.linkThreshold = linkThreshold;
+            this.minBoxArea = minBoxArea;
+        }
+
+        public int width() {
+            return right - left;
+        }
+
+        public int height() {
+            return bottom - top;
+        }
+
+        @Override
+        public String toString() {
+            return (prefix.isEmpty() ? "single pass" : prefix.substring(0, prefix.length() - 1))
+                    + " [" + left + "," + top + "," + right + "," + bottom + "] at " + resizedWidth + "x" + resizedHeight;
+        }
+    }
+
+    public static class Section {
+        public final String name;
+        public final String dtype;
+        public final int[] shape;
+        public final float scale;
+        public final int zeroPoint;
+        public final byte[] data;
+
+        Section(String name, String dtype, int[] shape, float scale, int zeroPoint, byte[] data) {
+            this.name = name;
+            this.dtype = dtype;
+            this.shape = shape;
+            this.scale = scale;
+            this.zeroPoint = zeroPoint;
+            this.data = data;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + dtype + Arrays.toString(shape) + " " + data.length + " bytes";
+        }
+    }
+
+    public String detectionPath = "single";   // single, tiled or cascade
+    public int imageWidth;
+    public int imageHeight;
+    public int resizedWidth;
+    public int resizedHeight;
+    public float textThreshold;
+    public float linkThreshold;
+    public int minBoxArea;
+    public long detectMs;
+    public long totalMs;
+
+    private final ByteOrder order;
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private int passCount;
+
+    public PipelineCapture() {
+        this(ByteOrder.nativeOrder());
+    }
+
+    private PipelineCapture(ByteOrder order) {
+        this.order = order;
+    }
+
+    public ByteOrder getOrder() {
+        return order;
+    }
+
+    public synchronized Section getSection(String name) {
+        return sections.get(name);
+    }
+
+    public synchronized Collection<Section> getSections() {
+        return new ArrayList<>(sections.values());
+    }
+
+    /**
+     * Reserves the next pass of a tiled or cascade run and returns the prefix for its sections,
+     * or null once MAX_PASSES are recorded. Tile workers call this concurrently.
+     */
+    public synchronized String beginPass(int left, int top, int right, int bottom, int resizedWidth, int resizedHeight,
+                                         float textThreshold, float linkThreshold, int minBoxArea) {
+        if (passCount >= MAX_PASSES) return null;
+        String prefix = PASS + (passCount++) + "/";
+        ByteBuffer buffer = ByteBuffer.allocate(9 * 4).order(order);
+        buffer.putInt(left).putInt(top).putInt(right).putInt(bottom).putInt(resizedWidth).putInt(resizedHeight)
+                .putInt(minBoxArea).putFloat(textThreshold).putFloat(linkThreshold);
+        put(new Section(prefix + PASS, DataType.INT32.name(), new int[]{9}, 0f, 0, buffer.array()));
+        return prefix;
+    }
+
+    // The single pass described by the header fields, if its stages were recorded, then every prefixed pass
+    public synchronized List<Pass> getPasses() {
+        List<Pass> passes = new ArrayList<>();
+        if (sections.containsKey(DETECTOR_INPUT) || sections.containsKey(MASK)) {
+            passes.add(new Pass("", 0, 0, imageWidth, imageHeight, resizedWidth, resizedHeight,
+                    textThreshold, linkThreshold, minBoxArea));
+        }
+        for (Section section : sections.values()) {
+            if (!section.name.startsWith(PASS) || !section.name.endsWith("/" + PASS)) continue;
+            ByteBuffer buffer = buffer(section);
+            String prefix = section.name.substring(0, section.name.length() - PASS.length());
+            int left = buffer.getInt();
+            int top = buffer.getInt();
+            int right = buffer.getInt();
+            int bottom = buffer.getInt();
+            int resizedW = buffer.getInt();
+            int resizedH = buffer.getInt();
+            int minArea = buffer.getInt();
+            float text = buffer.getFloat();
+            float link = buffer.getFloat();
+            passes.add(new Pass(prefix, left, top, right, bottom, resizedW, resizedH, text, link, minArea));
+        }
+        return passes;
+    }
+
+    private synchronized void put(Section section) {
+        sections.put(section.name, section);
+    }
+
+    // Payload wrapped in the byte order it was recorded with
+    public ByteBuffer buffer(Section section) {
+        return ByteBuffer.wrap(section.data).order(order);
+    }
+
+    public void addTensor(String name, DataType dtype, int[] shape, Tensor.QuantizationParams quant, ByteBuffer data) {
+        ByteBuffer source = data.duplicate();
+        source.rewind();
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        float scale = quant != null ? quant.getScale() : 0f;
+        int zeroPoint = quant != null ? quant.getZeroPoint() : 0;
+        put(new Section(name, dtype.name(), shape.clone(), scale, zeroPoint, bytes));
+    }
+
+    public void addPixels(String name, int[] pixels, int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4).order(order);
+        buffer.asIntBuffer().put(pixels);
+        put(new Section(name, DataType.INT32.name(), new int[]{height, width}, 0f, 0, buffer.array()));
+    }
+
+    public void addMask(String name, byte[][] mask) {
+        int h = mask.length;
+        int w = h > 0 ? mask[0].length : 0;
+        byte[] bytes = new byte[h * w];
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(mask[y], 0, bytes, y * w, w);
+        }
+        put(new Section(name, DataType.UINT8.name(), new int[]{h, w}, 0f, 0, bytes));
+    }
+
+    // Rows of {left, top, right, bottom}
+    public void addBoxes(String name, List<int[]> boxes) {
+        ByteBuffer buffer = ByteBuffer.allocate(boxes.size() * 16).order(order);
+        for (int[] box : boxes) {
+            buffer.putInt(box[0]).putInt(box[1]).putInt(box[2]).putInt(box[3]);
+        }
+        put(new Section(name, DataType.INT32.name(), new int[]{boxes.size(), 4}, 0f, 0, buffer.array()));
+    }
+
+    public void addText(String name, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        put(new Section(name, TEXT, new int[]{bytes.length}, 0f, 0, bytes));
+    }
+
+    public int[] getPixels(String name) {
+        Section section = getSection(name);
+        if (section == null) return null;
+        int[] pixels = new int[section.data.length / 4];
+        buffer(section).asIntBuffer().get(pixels);
+        return pixels;
+    }
+
+    public byte[][] getMask(String name) {
+        Section section = getSection(name);
+        if (section == null) return null;
+        int h = section.shape[0];
+        int w = section.shape[1];
+        byte[][] mask = new byte[h][w];
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(section.data, y * w, mask[y], 0, w);
+        }
+        return mask;
+    }
+
+    public List<int[]> getBoxes(String name) {
+        Section section = getSection(name);
+        if (section == null) return null;
+        ByteBuffer buffer = buffer(section);
+        List<int[]> boxes = new ArrayList<>(section.shape[0]);
+        for (int i = 0; i < section.shape[0]; i++) {
+            boxes.add(new int[]{buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()});
+        }
+        return boxes;
+    }
+
+    public String getText(String name) {
+        Section section = getSection(name);
+        return section != null ? new String(section.data, StandardCharsets.UTF_8) : null;
+    }
+
+    public synchronized void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(order == ByteOrder.LITTLE_ENDIAN);
+            out.writeUTF(detectionPath);
+            out.writeInt(imageWidth);
+            out.writeInt(imageHeight);
+            out.writeInt(resizedWidth);
+            out.writeInt(resizedHeight);
+            out.writeFloat(textThreshold);
+            out.writeFloat(linkThreshold);
+            out.writeInt(minBoxArea);
+            out.writeLong(detectMs);
+            out.writeLong(totalMs);
+
+            for (Section section : sections.values()) {
+                out.writeUTF(section.name);
+                out.writeUTF(section.dtype);
+                out.writeInt(section.shape.length);
+                for (int dim : section.shape) out.writeInt(dim);
+                out.writeFloat(section.scale);
+                out.writeInt(section.zeroPoint);
+                out.writeInt(section.data.length);
+                out.write(section.data);
+            }
+            out.writeUTF("");
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not move capture to " + file);
+        }
+    }
+
+    public static PipelineCapture read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a pipeline capture: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported capture version " + version + ": " + file);
+            }
+            PipelineCapture capture = new PipelineCapture(in.readBoolean() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            capture.detectionPath = in.readUTF();
+            capture.imageWidth = in.readInt();
+            capture.imageHeight = in.readInt();
+            capture.resizedWidth = in.readInt();
+            capture.resizedHeight = in.readInt();
+            capture.textThreshold = in.readFloat();
+            capture.linkThreshold = in.readFloat();
+            capture.minBoxArea = in.readInt();
+            capture.detectMs = in.readLong();
+            capture.totalMs = in.readLong();
+
+            while (true) {
+                String name = in.readUTF();
+                if (name.isEmpty()) break;
+                String dtype = in.readUTF();
+                int[] shape = new int[in.readInt()];
+                for (int i = 0; i < shape.length; i++) shape[i] = in.readInt();
+                float scale = in.readFloat();
+                int zeroPoint = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                capture.sections.put(name, new Section(name, dtype, shape, scale, zeroPoint, data));
+            }
+            return capture;
+        }
+    }
+}
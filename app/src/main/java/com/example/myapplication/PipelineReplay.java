@@ -0,0 +1,234 @@
+package com.example.myapplication;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Re-runs the model-free pipeline stages from a {@link PipelineCapture} on a desktop JVM:
+ * detector input filling, score/link thresholding, connected boxes and box mapping. Each
+ * stage starts from the captured input of that stage, is timed over a number of iterations
+ * and its output is compared with what the device produced.
+ */
+public class PipelineReplay {
+
+    public static class StageResult {
+        public String stage;
+        public int iterations;
+        public double meanMs;
+        public double minMs;
+        public String output;
+        public boolean matches;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-18s mean=%.3f ms min=%.3f ms  %s  %s",
+                    stage, meanMs, minMs, matches ? "MATCH" : "MISMATCH", output);
+        }
+    }
+
+    private interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    private final PipelineCapture capture;
+    private final int iterations;
+
+    public PipelineReplay(PipelineCapture capture, int iterations) {
+        this.capture = capture;
+        this.iterations = Math.max(1, iterations);
+    }
+
+    // Every stage whose input was captured, for the single pass or each recorded tile and coarse pass
+    public List<StageResult> runAll() throws Exception {
+        List<StageResult> results = new ArrayList<>();
+        for (PipelineCapture.Pass pass : capture.getPasses()) {
+            String p = pass.prefix;
+            if (capture.getPixels(p + PipelineCapture.PIXELS) != null && capture.getSection(p + PipelineCapture.DETECTOR_INPUT) != null) {
+                results.add(replayPreprocess(pass));
+            }
+            if (capture.getSection(p + PipelineCapture.DETECTOR_OUTPUT) != null && capture.getMask(p + PipelineCapture.MASK) != null) {
+                results.add(replayThreshold(pass));
+            }
+            if (capture.getMask(p + PipelineCapture.MASK) != null && capture.getSection(p + PipelineCapture.BOXES) != null) {
+                results.add(replayBoxes(pass));
+            }
+            if (capture.getSection(p + PipelineCapture.BOXES) != null && capture.getSection(p + PipelineCapture.REGIONS) != null) {
+                results.add(replayMapping(pass));
+            }
+        }
+        return results;
+    }
+
+    public StageResult replayPreprocess(PipelineCapture.Pass pass) throws Exception {
+        PipelineCapture.Section input = capture.getSection(pass.prefix + PipelineCapture.DETECTOR_INPUT);
+        int[] shape = input.shape;
+        DataType dtype = DataType.valueOf(input.dtype);
+        boolean nchw = !(shape[3] == 1 || shape[3] == 3);
+        int channels = nchw ? shape[1] : shape[3];
+        int width = pass.resizedWidth;
+        int height = pass.resizedHeight;
+        byte[] lut = QuantizedOps.buildInputLut(dtype, input.scale, input.zeroPoint);
+        ImagePlanes planes = ImagePlanes.fromArgb(capture.getPixels(pass.prefix + PipelineCapture.PIXELS), width, height);
+
+        StageResult stage = new StageResult();
+        ByteBuffer buffer = time(pass.prefix + "preprocess", stage, () -> {
+            ByteBuffer filled = ByteBuffer.allocateDirect(input.data.length).order(capture.getOrder());
+            PipelineStages.fillDetectorRows(filled, planes, 0, height, channels, nchw, dtype, input.scale, input.zeroPoint, lut);
+            return filled;
+        });
+        byte[] bytes = new byte[input.data.length];
+        buffer.rewind();
+        buffer.get(bytes);
+        stage.matches = Arrays.equals(bytes, input.data);
+        stage.output = dtype + Arrays.toString(shape);
+        return stage;
+    }
+
+    public StageResult replayThreshold(PipelineCapture.Pass pass) throws Exception {
+        PipelineCapture.Section output = capture.getSection(pass.prefix + PipelineCapture.DETECTOR_OUTPUT);
+        DataType dtype = DataType.valueOf(output.dtype);
+        Tensor.QuantizationParams quant = new Tensor.QuantizationParams(output.scale, output.zeroPoint);
+        ByteBuffer raw = capture.buffer(output);
+
+        StageResult stage = new StageResult();
+        byte[][] mask = time(pass.prefix + "threshold", stage, () -> PipelineStages.thresholdDetectorOutput(
+                raw, output.shape, dtype, quant, pass.textThreshold, pass.linkThreshold));
+        stage.matches = Arrays.deepEquals(mask, capture.getMask(pass.prefix + PipelineCapture.MASK));
+        stage.output = "mask " + mask.length + "x" + (mask.length > 0 ? mask[0].length : 0) + ", " + countSet(mask) + " cells set";
+        return stage;
+    }
+
+    public StageResult replayBoxes(PipelineCapture.Pass pass) throws Exception {
+        byte[][] mask = capture.getMask(pass.prefix + PipelineCapture.MASK);
+        List<int[]> expected = capture.getBoxes(pass.prefix + PipelineCapture.BOXES);
+
+        StageResult stage = new StageResult();
+        List<Box> boxes = time(pass.prefix + "boxes", stage, () -> PipelineStages.findConnectedBoxes(mask, pass.minBoxArea));
+        stage.matches = sameBoxes(toRows(boxes), expected);
+        stage.output = boxes.size() + " boxes";
+        return stage;
+    }
+
+    // Boxes of a tile or coarse pass map into its region; the single pass maps into the whole image
+    public StageResult replayMapping(PipelineCapture.Pass pass) throws Exception {
+        PipelineCapture.Section maskSection = capture.getSection(pass.prefix + PipelineCapture.MASK);
+        int maskH = maskSection.shape[0];
+        int maskW = maskSection.shape[1];
+        List<Box> boxes = new ArrayList<>();
+        for (int[] row : capture.getBoxes(pass.prefix + PipelineCapture.BOXES)) {
+            boxes.add(new Box(row[0], row[1], row[2], row[3]));
+        }
+
+        StageResult stage = new StageResult();
+        List<int[]> mapped = time(pass.prefix + "map", stage, () -> {
+            List<int[]> rows = new ArrayList<>(boxes.size());
+            for (Box box : boxes) {
+                rows.add(PipelineStages.mapBoxToOriginal(box, maskW, maskH, pass.resizedWidth, pass.resizedHeight,
+                        pass.width(), pass.height()));
+            }
+            return rows;
+        });
+        stage.matches = sameBoxes(mapped, capture.getBoxes(pass.prefix + PipelineCapture.REGIONS));
+        stage.output = mapped.size() + " regions";
+        return stage;
+    }
+
+    // Fills the timings of result and returns the output of the last iteration
+    private <T> T time(String name, StageResult result, Stage<T> body) throws Exception {
+        T output = body.run();  // warm-up, not timed
+        double total = 0;
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            output = body.run();
+            double ms = (System.nanoTime() - start) / 1e6;
+            total += ms;
+            min = Math.min(min, ms);
+        }
+        result.stage = name;
+        result.iterations = iterations;
+        result.meanMs = total / iterations;
+        result.minMs = min;
+        return output;
+    }
+
+    private static List<int[]> toRows(List<Box> boxes) {
+        List<int[]> rows = new ArrayList<>(boxes.size());
+        for (Box box : boxes) rows.add(new int[]{box.x1, box.y1, box.x2, box.y2});
+        return rows;
+    }
+
+    private static boolean sameBoxes(List<int[]> actual, List<int[]> expected) {
+        if (expected == null || actual.size() != expected.size()) return false;
+        for (int i = 0; i < actual.size(); i++) {
+            if (!Arrays.equals(actual.get(i), expected.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static int countSet(byte[][] mask) {
+        int count = 0;
+        for (byte[] row : mask) {
+            for (byte cell : row) if (cell != 0) count++;
+        }
+        return count;
+    }
+
+    public static String describe(PipelineCapture capture) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%s detection, image %dx%d, detector input %dx%d, thresholds %.2f/%.2f, device detect %d ms, total %d ms, %s%n",
+                capture.detectionPath, capture.imageWidth, capture.imageHeight, capture.resizedWidth, capture.resizedHeight,
+                capture.textThreshold, capture.linkThreshold, capture.detectMs, capture.totalMs,
+                capture.getOrder() == ByteOrder.LITTLE_ENDIAN ? "little-endian" : "big-endian"));
+        for (PipelineCapture.Pass pass : capture.getPasses()) {
+            sb.append("  ").append(pass).append('\n');
+        }
+        for (PipelineCapture.Section section : capture.getSections()) {
+            sb.append("  ").append(section).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Usage: PipelineReplay <iterations> <capture.ocap>...
+    // Exits with 1 if any replayed stage differs from the capture or a capture has nothing to
+    // replay, so it can drive a bisect
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: PipelineReplay <iterations> <capture.ocap>...");
+            System.exit(2);
+        }
+        int iterations = Integer.parseInt(args[0]);
+        boolean allMatch = true;
+        for (String path : Arrays.copyOfRange(args, 1, args.length)) {
+            PipelineCapture capture;
+            try {
+                capture = PipelineCapture.read(new File(path));
+            } catch (IOException e) {
+                System.err.println(path + ": " + e.getMessage());
+                allMatch = false;
+                continue;
+            }
+            System.out.println(path);
+            System.out.print(describe(capture));
+            List<StageResult> results = new PipelineReplay(capture, iterations).runAll();
+            if (results.isEmpty()) {
+                System.err.println(path + ": no replayable stage in this capture");
+                allMatch = false;
+            }
+            for (StageResult result : results) {
+                System.out.println("  " + result);
+                allMatch &= result.matches;
+            }
+        }
+        System.exit(allMatch ? 0 : 1);
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.myapplication;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The pipeline stages that are plain math on arrays and buffers: detector input filling,
+ * score/link thresholding, connected boxes, box mapping and greedy CTC decoding. Nothing here
+ * touches Android or an interpreter, so PipelineReplay can run it on a desktop JVM.
+ */
+public final class PipelineStages {
+
+    private PipelineStages() {
+    }
+
+    // Fills rows [yStart, yEnd) of the detector input from planes already at the input size;
+    // element offsets follow the NHWC or NCHW layout
+    static void fillDetectorRows(ByteBuffer buffer, ImagePlanes planes, int yStart, int yEnd,
+                                 int channels, boolean nchw, DataType dtype, float scale, int zeroPoint, byte[] lut) {
+        int targetW = planes.width;
+        int planeSize = targetW * planes.height;
+        for (int y = yStart; y < yEnd; y++) {
+            for (int x = 0; x < targetW; x++) {
+                int pixelIndex = y * targetW + x;
+
+                if (channels == 1) {
+                    int gray = planes.luma[pixelIndex] & 0xFF;
+                    if (lut != null) {
+                        buffer.put(pixelIndex, lut[gray]);
+                    } else {
+                        writeToBuffer(buffer, pixelIndex, gray / 255.0f, dtype, scale, zeroPoint);
+                    }
+                    continue;
+                }
+
+                int red = planes.r[pixelIndex] & 0xFF;
+                int green = planes.g[pixelIndex] & 0xFF;
+                int blue = planes.b[pixelIndex] & 0xFF;
+                int rIndex = nchw ? pixelIndex : pixelIndex * 3;
+                int gIndex = nchw ? planeSize + pixelIndex : rIndex + 1;
+                int bIndex = nchw ? 2 * planeSize + pixelIndex : rIndex + 2;
+                if (lut != null) {
+                    buffer.put(rIndex, lut[red]);
+                    buffer.put(gIndex, lut[green]);
+                    buffer.put(bIndex, lut[blue]);
+                } else {
+                    writeToBuffer(buffer, rIndex, red / 255.0f, dtype, scale, zeroPoint);
+                    writeToBuffer(buffer, gIndex, green / 255.0f, dtype, scale, zeroPoint);
+                    writeToBuffer(buffer, bIndex, blue / 255.0f, dtype, scale, zeroPoint);
+                }
+            }
+        }
+    }
+
+    // Same bytes as fillDetectorRows over every row, with stripes of stripeRows rows filled in parallel
+    static void fillDetectorRowsStriped(ByteBuffer buffer, ImagePlanes planes, int stripeRows,
+                                        int channels, boolean nchw, DataType dtype, float scale, int zeroPoint, byte[] lut) throws Exception {
+        List<Callable<Void>> stripes = new ArrayList<>();
+        for (int y0 = 0; y0 < planes.height; y0 += stripeRows) {
+            int start = y0;
+            int end = Math.min(planes.height, y0 + stripeRows);
+            stripes.add(() -> {
+                fillDetectorRows(buffer, planes, start, end, channels, nchw, dtype, scale, zeroPoint, lut);
+                return null;
+            });
+        }
+        for (Future<Void> stripe : ForkJoinPool.commonPool().invokeAll(stripes)) {
+            stripe.get();
+        }
+    }
+
+    // Absolute-offset variant of writeToBuffer; index is in elements, not bytes
+    static void writeToBuffer(ByteBuffer buffer, int index, float value, DataType dtype, float scale, int zeroPoint) {
+        if (dtype == DataType.FLOAT32) {
+            buffer.putFloat(index * 4, value);
+        } else if (dtype == DataType.UINT8) {
+            int quantized = Math.round(value / scale) + zeroPoint;
+            quantized = Math.max(0, Math.min(255, quantized));
+            buffer.put(index, (byte) (quantized & 0xFF));
+        } else if (dtype == DataType.INT8) {
+            int quantized = Math.round(value / scale) + zeroPoint;
+            quantized = Math.max(-128, Math.min(127, quantized));
+            buffer.put(index, (byte) quantized);
+        } else {
+            throw new IllegalArgumentException("Unsupported input data type: " + dtype);
+        }
+    }
+
+    /**
+     * Applies sigmoid and the text/link thresholds to a float [1, H, W, 2] detector output read
+     * straight from the output buffer; quantized outputs go through QuantizedOps instead.
+     */
+    public static byte[][] postprocessScoreLink(ByteBuffer raw, int[] shape, float textThreshold, float linkThreshold) {
+        int h = shape[1];
+        int w = shape[2];
+        int stride = shape[3];
+        byte[][] mask = new byte[h][w];
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int offset = ((y * w + x) * stride) * 4;
+                float score = sigmoid(raw.getFloat(offset));     // text score
+                float link = sigmoid(raw.getFloat(offset + 4));  // link score
+
+                byte textMask = (score > textThreshold) ? (byte) 1 : (byte) 0;
+                byte linkMask = (link > linkThreshold) ? (byte) 1 : (byte) 0;
+                mask[y][x] = (byte) (textMask | linkMask);
+            }
+        }
+
+        return mask;
+    }
+
+    // Raw detector output of any supported dtype to the combined text/link mask
+    public static byte[][] thresholdDetectorOutput(ByteBuffer raw, int[] shape, DataType dtype, Tensor.QuantizationParams quant,
+                                                   float textThreshold, float linkThreshold) {
+        if (QuantizedOps.isQuantized(dtype)) {
+            // Thresholds are moved into the quantized domain instead of dequantizing the maps
+            return QuantizedOps.postprocessScoreLink(raw, shape, dtype, quant, textThreshold, linkThreshold);
+        }
+        if (dtype != DataType.FLOAT32) {
+            throw new IllegalArgumentException("Unsupported detector output type: " + dtype);
+        }
+        return postprocessScoreLink(raw, shape, textThreshold, linkThreshold);
+    }
+
+    private static float sigmoid(float x) {
+        return (float) (1.0 / (1.0 + Math.exp(-x)));
+    }
+
+    public static List<Box> findConnectedBoxes(byte[][] mask, int minArea) {
+        int h = mask.length;
+        int w = mask[0].length;
+        boolean[][] visited = new boolean[h][w];
+        List<Box> boxes = new ArrayList<>();
+
+        int[][] neighbors = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (mask[y][x] != 0 && !visited[y][x]) {
+                    Queue<int[]> queue = new ArrayDeque<>();
+                    queue.add(new int[]{y, x});
+                    visited[y][x] = true;
+
+                    List<Integer> xs = new ArrayList<>();
+                    List<Integer> ys = new ArrayList<>();
+                    xs.add(x);
+                    ys.add(y);
+
+                    while (!queue.isEmpty()) {
+                        int[] pos = queue.poll();
+                        int cy = pos[0];
+                        int cx = pos[1];
+
+                        for (int[] offset : neighbors) {
+                            int ny = cy + offset[0];
+                            int nx = cx + offset[1];
+
+                            if (ny >= 0 && ny < h && nx >= 0 && nx < w) {
+                                if (mask[ny][nx] != 0 && !visited[ny][nx]) {
+                                    visited[ny][nx] = true;
+                                    queue.add(new int[]{ny, nx});
+                                    xs.add(nx);
+                                    ys.add(ny);
+                                }
+                            }
+                        }
+                    }
+
+                    int xMin = Collections.min(xs);
+                    int xMax = Collections.max(xs);
+                    int yMin = Collections.min(ys);
+                    int yMax = Collections.max(ys);
+                    int area = (xMax - xMin + 1) * (yMax - yMin + 1);
+
+                    if (area >= minArea) {
+                        boxes.add(new Box(xMin, yMin, xMax, yMax));
+                    }
+                }
+            }
+        }
+
+        return boxes;
+    }
+
+    // Mask box (half detector resolution) to {left, top, right, bottom} in original image pixels
+    public static int[] mapBoxToOriginal(Box box, int maskW, int maskH, int resizedW, int resizedH, int origW, int origH) {
+        int xMin = box.x1;
+        int yMin = box.y1;
+        int xMax = box.x2;
+        int yMax = box.y2;
+
+        // Step 1: map mask coords to resized coords
+        int x1_r = xMin * 2;
+        int x2_r = (xMax + 1) * 2;
+        int y1_r = yMin * 2;
+        int y2_r = (yMax + 1) * 2;
+
+        // Step 2: resized → original
+        float fx = (float) origW / resizedW;
+        float fy = (float) origH / resizedH;
+
+        int x1 = Math.round(x1_r * fx);
+        int x2 = Math.round(x2_r * fx);
+        int y1 = Math.round(y1_r * fy);
+        int y2 = Math.round(y2_r * fy);
+
+        // Clip
+        x1 = Math.max(0, Math.min(x1, origW - 1));
+        x2 = Math.max(1, Math.min(x2, origW));
+        y1 = Math.max(0, Math.min(y1, origH - 1));
+        y2 = Math.max(1, Math.min(y2, origH));
+
+        if (x2 <= x1) x2 = Math.min(origW, x1 + 1);
+        if (y2 <= y1) y2 = Math.min(origH, y1 + 1);
+
+        return new int[]{x1, y1, x2, y2};
+    }
+
+    public static String decodeCTCGreedy(float[][][] logits, List<String> labels, int blankIndex) {
+        if (logits.length != 1) return "?"; // Only batch size 1 supported
+        int[] path = argMaxPath(logits);
+        return collapseCTCPath(path, path.length, labels, blankIndex);
+    }
+
+    // Best class of every time step of a batch-1 recognizer output
+    static int[] argMaxPath(float[][][] logits) {
+        float[][] timeSteps = logits[0];
+        int[] path = new int[timeSteps.length];
+        for (int t = 0; t < timeSteps.length; t++) {
+            path[t] = argMax(timeSteps[t]);
+        }
+        return path;
+    }
+
+    // Greedy CTC over the first length steps: repeats collapse, blanks separate and are dropped
+    static String collapseCTCPath(int[] path, int length, List<String> labels, int blankIndex) {
+        StringBuilder decoded = new StringBuilder();
+        int prev = -1;
+
+        for (int t = 0; t < length; t++) {
+            int maxIdx = path[t];
+
+            if (maxIdx == prev || maxIdx == blankIndex) {
+                prev = maxIdx;
+                continue;
+            }
+
+            if (maxIdx >= 0 && maxIdx < labels.size()) {
+                decoded.append(labels.get(maxIdx));
+            } else {
+                decoded.append('?');
+            }
+
+            prev = maxIdx;
+        }
+
+        return decoded.toString();
+    }
+
+    private static int argMax(float[] array) {
+        int maxIdx = 0;
+        float maxVal = array[0];
+        for (int i = 1; i < array.length; i++) {
+            if (array[i] > maxVal) {
+                maxVal = array[i];
+                maxIdx = i;
+            }
+        }
+        return maxIdx;
+    }
+}
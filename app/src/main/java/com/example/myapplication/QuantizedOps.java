@@ -0,0 +1,113 @@
+package com.example.myapplication;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Integer-domain helpers for fully quantized (UINT8/INT8) detector and recognizer models,
+ * so neither side of the model has to go through a float dequantize/requantize step.
+ */
+public final class QuantizedOps {
+
+    private QuantizedOps() {
+    }
+
+    public static boolean isQuantized(DataType dtype) {
+        return dtype == DataType.UINT8 || dtype == DataType.INT8;
+    }
+
+    /**
+     * Maps an 8-bit pixel value straight to its quantized input byte. Entry p is exactly what
+     * writeToBuffer produces for p / 255f, so output is unchanged; when scale is 1/255 and the
+     * zero point is 0 (UINT8) or -128 (INT8) this is the raw pixel passed through.
+     * Returns null for float inputs.
+     */
+    public static byte[] buildInputLut(DataType dtype, float scale, int zeroPoint) {
+        if (!isQuantized(dtype)) return null;
+        int min = dtype == DataType.UINT8 ? 0 : -128;
+        int max = dtype == DataType.UINT8 ? 255 : 127;
+        byte[] lut = new byte[256];
+        for (int p = 0; p < 256; p++) {
+            int quantized = Math.round((p / 255.0f) / scale) + zeroPoint;
+            lut[p] = (byte) Math.max(min, Math.min(max, quantized));
+        }
+        return lut;
+    }
+
+    public static ByteBuffer allocateOutput(Tensor tensor) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(tensor.numBytes());
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    /**
+     * Largest quantized value q for which sigmoid(scale * (q - zeroPoint)) is still <= threshold,
+     * so "sigmoid(x) > threshold" becomes the integer test q > result.
+     */
+    static int sigmoidThreshold(float threshold, Tensor.QuantizationParams quant) {
+        double logit = Math.log(threshold / (1.0 - threshold));
+        return (int) Math.floor(quant.getZeroPoint() + logit / quant.getScale());
+    }
+
+    /**
+     * Quantized counterpart of postprocessScoreLink for a [1, H, W, 2] text/link output.
+     */
+    public static byte[][] postprocessScoreLink(ByteBuffer raw, int[] shape, DataType dtype, Tensor.QuantizationParams quant,
+                                                float textThreshold, float linkThreshold) {
+        int h = shape[1];
+        int w = shape[2];
+        int c = shape[3];
+        int textLimit = sigmoidThreshold(textThreshold, quant);
+        int linkLimit = sigmoidThreshold(linkThreshold, quant);
+        boolean unsigned = dtype == DataType.UINT8;
+
+        byte[][] mask = new byte[h][w];
+        for (int y = 0; y < h; y++) {
+            int row = y * w * c;
+            for (int x = 0; x < w; x++) {
+                int at = row + x * c;
+                int score = unsigned ? raw.get(at) & 0xFF : raw.get(at);
+                int link = unsigned ? raw.get(at + 1) & 0xFF : raw.get(at + 1);
+                mask[y][x] = (score > textLimit || link > linkLimit) ? (byte) 1 : (byte) 0;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Greedy CTC decode straight from a quantized [1, T, C] output. Dequantization is
+     * monotonic (scale > 0), so the argmax over raw bytes equals the float argmax.
+     */
+    public static String decodeCTCGreedy(ByteBuffer raw, int[] shape, DataType dtype, List<String> labels, int blankIndex) {
+        if (shape[0] != 1) return "?"; // Only batch size 1 supported
+        int[] path = argMaxPath(raw, shape, dtype);
+        return PipelineStages.collapseCTCPath(path, path.length, labels, blankIndex);
+    }
+
+    // Best class of every time step, compared on the raw quantized values
+    static int[] argMaxPath(ByteBuffer raw, int[] shape, DataType dtype) {
+        int steps = shape[1];
+        int classes = shape[2];
+        boolean unsigned = dtype == DataType.UINT8;
+        int[] path = new int[steps];
+
+        for (int t = 0; t < steps; t++) {
+            int base = t * classes;
+            int maxIdx = 0;
+            int maxVal = unsigned ? raw.get(base) & 0xFF : raw.get(base);
+            for (int i = 1; i < classes; i++) {
+                int v = unsigned ? raw.get(base + i) & 0xFF : raw.get(base + i);
+                if (v > maxVal) {
+                    maxVal = v;
+                    maxIdx = i;
+                }
+            }
+            path[t] = maxIdx;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a dynamic-width recognizer on a fixed set of input widths. Each crop is scaled to the
+ * recognizer height, placed in the smallest bucket that fits and padded on the right with its
+ * estimated background, so the interpreter only reallocates tensors when the bucket changes
+ * instead of on every crop. A crop wider than the largest bucket is not squeezed: it is
+ * recognized in overlapping chunks of that bucket at the same scale, and each chunk keeps the
+ * output steps up to the middle of its overlaps, so the steps join into one CTC path.
+ *
+ * With the single shared interpreter (the default), a page whose lines alternate between two
+ * buckets still pays resizeInput + allocateTensors on every switch; the reallocation counts in
+ * statsReport show how often that happens. interpreterPerBucket gives every bucket but the
+ * first its own interpreter, which never reallocates after its first crop, at the price of
+ * one extra tensor arena per bucket (the weights stay shared through the mapped model).
+ */
+public class RecognizerBuckets {
+    private static final String TAG = "RecognizerBuckets";
+
+    public static class Config {
+        public int[] widths = {64, 128, 256, 512, 1024};
+        public int height = 32;                 // used when the model height is dynamic too
+        public float padValue = -1f;            // 0..1, or < 0 for the median of the crop's border
+        public boolean interpreterPerBucket = false;  // trades one arena per bucket for no reallocations
+        public int chunkOverlap = 0;            // scaled pixels shared by chunks of an over-wide crop; 0 = height
+    }
+
+    public interface InterpreterFactory {
+        Interpreter create();
+    }
+
+    private static class Bucket {
+        final int width;
+        final int[] inputShape;
+        final ByteBuffer input;
+        Interpreter interpreter;
+        Object output;
+        int[] outputShape;
+        long uses;
+        int reallocations;
+        int chunked;
+
+        Bucket(int width, int[] inputShape, int inputBytes) {
+            this.width = width;
+            this.inputShape = inputShape;
+            this.input = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private final Interpreter shared;
+    private final Config config;
+    private final Bucket[] buckets;
+    private final boolean nchw;
+    private final int height;
+    private final int channels;
+    private final DataType inputDtype;
+    private final float scale;
+    private final int zeroPoint;
+    private final byte[] lut;
+    private Bucket active;
+
+    public RecognizerBuckets(Interpreter recognizer, InterpreterFactory factory, Config config) {
+        this.shared = recognizer;
+        this.config = config;
+
+        Tensor inputTensor = recognizer.getInputTensor(0);
+        int[] signature = inputTensor.shapeSignature();
+        if (signature.length != 4) {
+            throw new IllegalArgumentException("Input shape must be 4D. Got: " + Arrays.toString(signature));
+        }
+        if (signature[3] == 1 || signature[3] == 3) {
+            nchw = false;
+            channels = signature[3];
+            height = signature[1] > 0 ? signature[1] : config.height;
+        } else if (signature[1] == 1 || signature[1] == 3) {
+            nchw = true;
+            channels = signature[1];
+            height = signature[2] > 0 ? signature[2] : config.height;
+        } else {
+            throw new IllegalArgumentException("Cannot infer recognizer layout from shape " + Arrays.toString(signature));
+        }
+
+        inputDtype = inputTensor.dataType();
+        Tensor.QuantizationParams quant = inputTensor.quantizationParams();
+        scale = quant != null ? quant.getScale() : 1.0f;
+        zeroPoint = quant != null ? quant.getZeroPoint() : 0;
+        lut = QuantizedOps.buildInputLut(inputDtype, scale, zeroPoint);
+
+        int[] widths = config.widths.clone();
+        Arrays.sort(widths);
+        int elementSize = inputDtype == DataType.FLOAT32 ? 4 : 1;
+        buckets = new Bucket[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            int w = widths[i];
+            int[] shape = nchw ? new int[]{1, channels, height, w} : new int[]{1, height, w, channels};
+            buckets[i] = new Bucket(w, shape, height * w * channels * elementSize);
+            buckets[i].interpreter = config.interpreterPerBucket && factory != null && i > 0 ? factory.create() : recognizer;
+            if (buckets[i].interpreter == null) buckets[i].interpreter = recognizer;
+        }
+    }
+
+    public static boolean hasDynamicWidth(Interpreter recognizer) {
+        int[] signature = recognizer.getInputTensor(0).shapeSignature();
+        if (signature.length != 4) return false;
+        if (signature[3] == 1 || signature[3] == 3) return signature[2] <= 0;
+        return signature[3] <= 0;
+    }
+
+    // Recognizes the box of the request's planes without creating a crop bitmap
+    public synchronized String recognize(ImagePlanes image, Rect box, List<String> labels, int blankIndex) {
+        int naturalW = (int) Math.ceil(box.width() * (height / (float) box.height()));
+        Bucket widest = buckets[buckets.length - 1];
+        if (naturalW <= widest.width) {
+            int[] path = run(image, box.left, box.top, box.width(), box.height(), Math.max(1, naturalW));
+            return PipelineStages.collapseCTCPath(path, path.length, labels, blankIndex);
+        }
+
+        widest.chunked++;
+        int overlap = config.chunkOverlap > 0 ? config.chunkOverlap : height;
+        float toSource = box.width() / (float) naturalW;
+        int[] joined = new int[0];
+        int length = 0;
+        for (int[] chunk : chunks(naturalW, widest.width, overlap)) {
+            int left = box.left + Math.round(chunk[0] * toSource);
+            int right = Math.min(box.right, box.left + Math.round(chunk[1] * toSource));
+            int chunkW = chunk[1] - chunk[0];
+            int[] path = run(image, left, box.top, Math.max(1, right - left), box.height(), chunkW);
+
+            if (joined.length < length + path.length) joined = Arrays.copyOf(joined, length + path.length);
+            length = keepSteps(path, pick(chunkW).width, chunk[2] - chunk[0], chunk[3] - chunk[0], joined, length);
+        }
+        return PipelineStages.collapseCTCPath(joined, length, labels, blankIndex);
+    }
+
+    /**
+     * Splits a crop of naturalW scaled columns into chunks of at most width columns, each
+     * sharing overlap columns with the next. Returns {start, end, keepFrom, keepTo} per chunk;
+     * the keep ranges meet in the middle of every overlap and together cover 0..naturalW.
+     */
+    static List<int[]> chunks(int naturalW, int width, int overlap) {
+        overlap = Math.max(0, Math.min(overlap, width / 2));
+        int step = width - overlap;
+        List<int[]> chunks = new ArrayList<>();
+        for (int start = 0; ; start += step) {
+            int end = Math.min(start + width, naturalW);
+            boolean last = end == naturalW;
+            int keepFrom = start == 0 ? 0 : start + overlap / 2;
+            int keepTo = last ? end : start + step + overlap / 2;
+            chunks.add(new int[]{start, end, keepFrom, keepTo});
+            if (last) return chunks;
+        }
+    }
+
+    // Appends the steps of a bucketW-wide output whose columns lie in keepFrom..keepTo; returns the new length
+    static int keepSteps(int[] path, int bucketW, int keepFrom, int keepTo, int[] joined, int length) {
+        for (int t = 0; t < path.length; t++) {
+            // Output step t covers the columns around (t + 0.5) * bucketW / steps
+            float x = (t + 0.5f) * bucketW / path.length;
+            if (x >= keepFrom && x < keepTo) joined[length++] = path[t];
+        }
+        return length;
+    }
+
+    // Runs the region scaled to scaledW columns in the smallest bucket that holds it; returns the best class per output step
+    private int[] run(ImagePlanes image, int left, int top, int width, int boxHeight, int scaledW) {
+        Bucket bucket = pick(scaledW);
+        bucket.uses++;
+
+        prepare(bucket);
+        fillInput(bucket, image, left, top, width, boxHeight, scaledW);
+
+        Interpreter interpreter = bucket.interpreter;
+        bucket.input.rewind();
+        interpreter.run(bucket.input, bucket.output);
+
+        Tensor outputTensor = interpreter.getOutputTensor(0);
+        if (bucket.output instanceof ByteBuffer) {
+            ByteBuffer raw = (ByteBuffer) bucket.output;
+            raw.rewind();
+            return QuantizedOps.argMaxPath(raw, bucket.outputShape, outputTensor.dataType());
+        }
+        return PipelineStages.argMaxPath((float[][][]) bucket.output);
+    }
+
+    private Bucket pick(int naturalW) {
+        for (Bucket bucket : buckets) {
+            if (naturalW <= bucket.width) return bucket;
+        }
+        return buckets[buckets.length - 1];
+    }
+
+    // Resizes the interpreter only when it last ran with a different bucket shape
+    private void prepare(Bucket bucket) {
+        Interpreter interpreter = bucket.interpreter;
+        boolean sharedInterpreter = interpreter == shared;
+        boolean needsResize = sharedInterpreter ? active != bucket : bucket.output == null;
+        if (needsResize) {
+            interpreter.resizeInput(0, bucket.inputShape);
+            interpreter.allocateTensors();
+            bucket.reallocations++;
+            if (sharedInterpreter) active = bucket;
+        }
+
+        if (bucket.output == null) {
+            Tensor outputTensor = interpreter.getOutputTensor(0);
+            bucket.outputShape = outputTensor.shape();
+            if (QuantizedOps.isQuantized(outputTensor.dataType())) {
+                bucket.output = QuantizedOps.allocateOutput(outputTensor);
+            } else {
+                bucket.output = new float[bucket.outputShape[0]][bucket.outputShape[1]][bucket.outputShape[2]];
+            }
+        }
+    }
+
+    private void fillInput(Bucket bucket, ImagePlanes image, int left, int top, int width, int boxHeight, int scaledW) {
+        // Gray models read the shared luminance plane, RGB models the colour planes
+        ImagePlanes resized = image.resample(left, top, width, boxHeight, scaledW, height, channels != 1);
+
+        ByteBuffer buffer = bucket.input;
+        int w = bucket.width;
+        // Repeating the last column would smear a stroke cut by the box edge across the padding
+        float[] background = new float[channels];
+        if (scaledW < w) {
+            for (int c = 0; c < channels; c++) {
+                byte[] plane = channels == 1 ? resized.luma : (c == 0) ? resized.r : (c == 1) ? resized.g : resized.b;
+                background[c] = config.padValue >= 0 ? config.padValue : borderMedian(plane, scaledW, height) / 255f;
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * w;
+            int srcRow = y * scaledW;
+            for (int x = 0; x < w; x++) {
+                boolean pad = x >= scaledW;
+                int src = srcRow + Math.min(x, scaledW - 1);
+
+                for (int c = 0; c < channels; c++) {
+                    int index = nchw ? (c * height + y) * w + x : (row + x) * channels + c;
+                    if (pad) {
+                        putValue(buffer, index, background[c]);
+                    } else {
+                        byte[] plane = channels == 1 ? resized.luma : (c == 0) ? resized.r : (c == 1) ? resized.g : resized.b;
+                        int v = plane[src] & 0xFF;
+                        if (lut != null) {
+                            buffer.put(index, lut[v]);
+                        } else {
+                            putValue(buffer, index, v / 255f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Median of the outermost rows and columns, which in a text crop are mostly background
+    static int borderMedian(byte[] plane, int w, int h) {
+        int[] histogram = new int[256];
+        int count = 0;
+        for (int x = 0; x < w; x++) {
+            histogram[plane[x] & 0xFF]++;
+            histogram[plane[(h - 1) * w + x] & 0xFF]++;
+            count += 2;
+        }
+        for (int y = 1; y < h - 1; y++) {
+            histogram[plane[y * w] & 0xFF]++;
+            histogram[plane[y * w + w - 1] & 0xFF]++;
+            count += 2;
+        }
+        int seen = 0;
+        for (int v = 0; v < 256; v++) {
+            seen += histogram[v];
+            if (seen * 2 >= count) return v;
+        }
+        return 255;
+    }
+
+    private void putValue(ByteBuffer buffer, int index, float value) {
+        if (inputDtype == DataType.FLOAT32) {
+            buffer.putFloat(index * 4, value);
+        } else {
+            int quantized = Math.round(value / scale) + zeroPoint;
+            if (inputDtype == DataType.UINT8) {
+                buffer.put(index, (byte) Math.max(0, Math.min(255, quantized)));
+            } else {
+                buffer.put(index, (byte) Math.max(-128, Math.min(127, quantized)));
+            }
+        }
+    }
+
+    // Input buffers of every bucket plus the outputs allocated so far, for the memory budget
+    public synchronized long getBufferBytes() {
+        long bytes = 0;
+        for (Bucket bucket : buckets) {
+            bytes += bucket.input.capacity();
+            if (bucket.output instanceof ByteBuffer) {
+                bytes += ((ByteBuffer) bucket.output).capacity();
+            } else if (bucket.output != null) {
+                bytes += 4L * bucket.outputShape[0] * bucket.outputShape[1] * bucket.outputShape[2];
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized int[] getReallocationCounts() {
+        int[] counts = new int[buckets.length];
+        for (int i = 0; i < buckets.length; i++) counts[i] = buckets[i].reallocations;
+        return counts;
+    }
+
+    public synchronized long[] getUseCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) counts[i] = buckets[i].uses;
+        return counts;
+    }
+
+    // One line per bucket, for tuning the width set against the real crop distribution
+    public synchronized String statsReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Bucket bucket : buckets) {
+            sb.append(String.format(Locale.ROOT, "w=%d uses=%d reallocations=%d chunked=%d%n",
+                    bucket.width, bucket.uses, bucket.reallocations, bucket.chunked));
+        }
+        return sb.toString();
+    }
+
+    public void logStats() {
+        Log.d(TAG, statsReport());
+    }
+}
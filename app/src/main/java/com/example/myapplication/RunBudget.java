@@ -0,0 +1,74 @@
+package com.example.myapplication;
+
+/**
+ * Cancellation flag plus an optional time budget for one pipeline run. The pipeline polls
+ * it between stages and between crops, and stops early once it is cancelled or expired.
+ */
+public class RunBudget {
+    private volatile long budgetNanos;
+    private boolean started;
+    private volatile boolean cancelled = false;
+    private volatile long deadlineNanos = Long.MAX_VALUE;
+    private volatile int skipped = 0;
+
+    // budgetMs <= 0 means no deadline
+    public RunBudget(long budgetMs) {
+        this.budgetNanos = budgetMs > 0 ? budgetMs * 1_000_000L : 0;
+    }
+
+    public static RunBudget unlimited() {
+        return new RunBudget(0);
+    }
+
+    // The clock starts when the run actually begins, not when it was queued
+    public synchronized void start() {
+        started = true;
+        if (budgetNanos > 0) {
+            deadlineNanos = System.nanoTime() + budgetNanos;
+        }
+    }
+
+    /**
+     * Shortens the budget to budgetMs unless it already is shorter, e.g. when a request with a
+     * deadline joins a run without one. A run that already started gets the deadline from now.
+     */
+    public synchronized void tighten(long budgetMs) {
+        if (budgetMs <= 0) return;
+        long nanos = budgetMs * 1_000_000L;
+        if (budgetNanos == 0 || nanos < budgetNanos) budgetNanos = nanos;
+        if (started) deadlineNanos = Math.min(deadlineNanos, System.nanoTime() + nanos);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean hasDeadline() {
+        return budgetNanos > 0;
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() > deadlineNanos;
+    }
+
+    public boolean shouldStop() {
+        return cancelled || isExpired();
+    }
+
+    public void markSkipped(int count) {
+        skipped += count;
+    }
+
+    // Crops that were not recognized because the run was stopped
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public boolean isPartial() {
+        return skipped > 0;
+    }
+}
@@ -0,0 +1,687 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inverted index over recognized text: term -> (image id, box) postings.
+ *
+ * New postings are buffered in memory and flushed as immutable segment files, which are
+ * memory-mapped for queries. Segments are grouped into size tiers (powers of mergeFactor
+ * postings); once mergeFactor adjacent segments share a tier they are merged on a background
+ * thread, so every posting is rewritten about log(total / flush size) times rather than on
+ * every merge. The list of live segments is kept in a small manifest file.
+ *
+ * Buffered postings are also appended to a log named after the segment they will become;
+ * sync() makes them durable without cutting a segment, and the log is replayed on open unless
+ * the manifest already lists that segment.
+ *
+ * Segment layout (big-endian):
+ *   postings   : postingCount x [imageId, left, top, right, bottom] ints
+ *   terms      : termCount x [short len, UTF-8 bytes, int firstPosting, int postingCount]
+ *   term table : termCount x int offset of each term entry, sorted by unsigned UTF-8 bytes
+ *   footer     : int postingCount, int termCount, int termTableOffset, int magic
+ */
+public class TextIndex implements Closeable {
+    private static final String TAG = "TextIndex";
+    private static final String MANIFEST = "segments";
+    private static final int SEGMENT_MAGIC = 0x54494458; // "TIDX"
+    private static final int POSTING_BYTES = 20;
+    private static final int FOOTER_BYTES = 16;
+    private static final String LOG_SUFFIX = ".log";
+
+    public static class Config {
+        public int flushPostings = 50000;   // in-memory postings before a segment is written
+        public int mergeFactor = 4;         // this many adjacent segments of one size tier are merged
+    }
+
+    public static class Posting {
+        public final int imageId;
+        public final Rect box;
+
+        public Posting(int imageId, Rect box) {
+            this.imageId = imageId;
+            this.box = box;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Posting)) return false;
+            Posting p = (Posting) o;
+            return imageId == p.imageId && box.left == p.box.left && box.top == p.box.top
+                    && box.right == p.box.right && box.bottom == p.box.bottom;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new int[]{imageId, box.left, box.top, box.right, box.bottom});
+        }
+    }
+
+    private final File directory;
+    private final Config config;
+    private final ExecutorService merger = Executors.newSingleThreadExecutor();
+    private final Object lock = new Object();
+
+    private TreeMap<String, List<Posting>> pending = new TreeMap<>();
+    private int pendingCount = 0;
+    private volatile List<Segment> segments = new ArrayList<>();
+    private int nextGeneration = 0;
+    private boolean merging = false;
+    private long postingsWritten = 0;
+
+    // Log of the pending postings; logGeneration is the segment they will be flushed to
+    private FileOutputStream logFile;
+    private DataOutputStream log;
+    private int logGeneration = -1;
+    private final List<File> replayedLogs = new ArrayList<>();
+
+    public TextIndex(File directory, Config config) throws IOException {
+        this.directory = directory;
+        this.config = config;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create index directory " + directory);
+        }
+
+        File manifest = new File(directory, MANIFEST);
+        List<Segment> loaded = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        if (manifest.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    loaded.add(new Segment(new File(directory, line)));
+                    names.add(line);
+                    nextGeneration = Math.max(nextGeneration, generationOf(line) + 1);
+                }
+            }
+        }
+        segments = Collections.unmodifiableList(loaded);
+
+        // A log whose segment is in the manifest was flushed before the log could be removed
+        String[] logs = directory.list((dir, name) -> name.endsWith(LOG_SUFFIX));
+        if (logs != null) {
+            Arrays.sort(logs);
+            for (String name : logs) {
+                int generation = generationOf(name);
+                nextGeneration = Math.max(nextGeneration, generation + 1);
+                File file = new File(directory, name);
+                if (names.contains(segmentName(generation))) {
+                    if (!file.delete()) Log.w(TAG, "Could not delete flushed log " + file);
+                    continue;
+                }
+                replayLog(file, generation);
+            }
+        }
+        Log.d(TAG, "Opened index with " + loaded.size() + " segments and " + pendingCount + " logged postings");
+    }
+
+    // Adds every term of every recognized line; an image may be added in several calls
+    public void add(int imageId, List<TextLine> lines) throws IOException {
+        synchronized (lock) {
+            if (log == null) {
+                openLog(nextGeneration++, false);
+            }
+            for (TextLine line : lines) {
+                for (String term : new LinkedHashSet<>(tokenize(line.text))) {
+                    Posting posting = new Posting(imageId, new Rect(line.box));
+                    addPending(term, posting);
+                    byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                    log.writeShort(bytes.length);
+                    log.write(bytes);
+                    log.writeInt(imageId);
+                    log.writeInt(posting.box.left);
+                    log.writeInt(posting.box.top);
+                    log.writeInt(posting.box.right);
+                    log.writeInt(posting.box.bottom);
+                }
+            }
+            if (pendingCount >= config.flushPostings) {
+                flushLocked();
+            }
+        }
+    }
+
+    // Makes every added posting durable without writing a segment
+    public void sync() throws IOException {
+        synchronized (lock) {
+            if (log == null) return;
+            log.flush();
+            logFile.getFD().sync();
+        }
+    }
+
+    public void flush() throws IOException {
+        synchronized (lock) {
+            flushLocked();
+        }
+    }
+
+    // Live segments, and postings written to segment files (flushes plus merges) since open
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getPostingsWritten() {
+        synchronized (lock) {
+            return postingsWritten;
+        }
+    }
+
+    public List<Posting> search(String term) {
+        String normalized = term.toLowerCase(Locale.ROOT).trim();
+        byte[] key = normalized.getBytes(StandardCharsets.UTF_8);
+        Set<Posting> results = new LinkedHashSet<>();
+
+        for (Segment segment : segments) {
+            int i = segment.lowerBound(key);
+            if (i < segment.termCount && segment.compareTerm(i, key) == 0) {
+                segment.readPostings(i, results);
+            }
+        }
+        synchronized (lock) {
+            List<Posting> buffered = pending.get(normalized);
+            if (buffered != null) results.addAll(buffered);
+        }
+        return new ArrayList<>(results);
+    }
+
+    // All postings whose term starts with the prefix, capped at limit
+    public List<Posting> searchPrefix(String prefix, int limit) {
+        String normalized = prefix.toLowerCase(Locale.ROOT).trim();
+        byte[] key = normalized.getBytes(StandardCharsets.UTF_8);
+        Set<Posting> results = new LinkedHashSet<>();
+
+        for (Segment segment : segments) {
+            for (int i = segment.lowerBound(key); i < segment.termCount && results.size() < limit; i++) {
+                if (!segment.termStartsWith(i, key)) break;
+                segment.readPostings(i, results);
+            }
+        }
+        synchronized (lock) {
+            for (Map.Entry<String, List<Posting>> entry : pending.tailMap(normalized).entrySet()) {
+                if (results.size() >= limit || !entry.getKey().startsWith(normalized)) break;
+                results.addAll(entry.getValue());
+            }
+        }
+
+        List<Posting> list = new ArrayList<>(results);
+        return list.size() > limit ? list.subList(0, limit) : list;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (lock) {
+            // Still open only when nothing was added since it was opened
+            if (log != null) log.close();
+        }
+        merger.shutdown();
+        try {
+            merger.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(c);
+            } else if (current.length() > 0) {
+                terms.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) terms.add(current.toString());
+        return terms;
+    }
+
+    private void addPending(String term, Posting posting) {
+        List<Posting> postings = pending.get(term);
+        if (postings == null) {
+            postings = new ArrayList<>();
+            pending.put(term, postings);
+        }
+        postings.add(posting);
+        pendingCount++;
+    }
+
+    private void openLog(int generation, boolean append) throws IOException {
+        logGeneration = generation;
+        logFile = new FileOutputStream(new File(directory, logName(generation)), append);
+        log = new DataOutputStream(new BufferedOutputStream(logFile, 1 << 16));
+    }
+
+    // Log record: short term length, UTF-8 term, imageId, left, top, right, bottom
+    private void replayLog(File file, int generation) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] term = new byte[in.readUnsignedShort()];
+                in.readFully(term);
+                Posting posting = new Posting(in.readInt(), new Rect(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                addPending(new String(term, StandardCharsets.UTF_8), posting);
+                valid += 2 + term.length + POSTING_BYTES;
+            }
+        } catch (EOFException e) {
+            // End of the log, or a record torn by a crash after the last sync
+        }
+
+        if (log != null) {
+            // Only one log exists between flushes; an older one is dropped after the next flush
+            replayedLogs.add(new File(directory, logName(logGeneration)));
+            log.close();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(valid);
+        }
+        openLog(generation, true);
+    }
+
+    private void flushLocked() throws IOException {
+        if (pending.isEmpty()) return;
+
+        // Segments are ordered by unsigned UTF-8 bytes, which can differ from String order
+        List<byte[]> keys = new ArrayList<>(pending.size());
+        List<List<Posting>> values = new ArrayList<>(pending.size());
+        List<Map.Entry<String, List<Posting>>> entries = new ArrayList<>(pending.entrySet());
+        Collections.sort(entries, (a, b) -> compareBytes(a.getKey().getBytes(StandardCharsets.UTF_8), b.getKey().getBytes(StandardCharsets.UTF_8)));
+        for (Map.Entry<String, List<Posting>> entry : entries) {
+            keys.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            values.add(entry.getValue());
+        }
+
+        File file = new File(directory, segmentName(logGeneration >= 0 ? logGeneration : nextGeneration++));
+        SegmentWriter writer = new SegmentWriter(file);
+        for (int i = 0; i < keys.size(); i++) {
+            writer.startTerm(keys.get(i));
+            for (Posting p : values.get(i)) {
+                writer.writePosting(p.imageId, p.box.left, p.box.top, p.box.right, p.box.bottom);
+            }
+        }
+        writer.finish();
+
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.add(new Segment(file));
+        writeManifest(updated);
+        segments = Collections.unmodifiableList(updated);
+        postingsWritten += pendingCount;
+
+        // The segment is in the manifest, so its log (and any replayed older one) is redundant
+        if (log != null) {
+            log.close();
+            replayedLogs.add(new File(directory, logName(logGeneration)));
+            log = null;
+            logFile = null;
+        }
+        logGeneration = -1;
+        for (File stale : replayedLogs) {
+            if (stale.exists() && !stale.delete()) Log.w(TAG, "Could not delete log " + stale);
+        }
+        replayedLogs.clear();
+
+        Log.d(TAG, "Flushed " + pendingCount + " postings, " + keys.size() + " terms to " + file.getName());
+        pending = new TreeMap<>();
+        pendingCount = 0;
+
+        if (!merging && pickMerge(updated) != null) {
+            merging = true;
+            merger.execute(this::mergeSegments);
+        }
+    }
+
+    private int tier(Segment segment) {
+        int factor = Math.max(2, config.mergeFactor);
+        int tier = 0;
+        for (long n = segment.postingCount; n >= factor; n /= factor) tier++;
+        return tier;
+    }
+
+    /**
+     * The oldest mergeFactor adjacent segments of one tier, or null. A segment counts at the
+     * highest tier of itself and every newer segment, so a small segment left in front of a
+     * larger one (after a short flush, or a flush during a merge) joins that tier instead of
+     * splitting it. Merging exactly mergeFactor segments of tier t yields tier t + 1.
+     */
+    private List<Segment> pickMerge(List<Segment> list) {
+        int factor = Math.max(2, config.mergeFactor);
+        int[] tiers = new int[list.size()];
+        for (int i = list.size() - 1; i >= 0; i--) {
+            tiers[i] = Math.max(tier(list.get(i)), i + 1 < list.size() ? tiers[i + 1] : 0);
+        }
+        for (int begin = 0; begin + factor <= list.size(); ) {
+            int end = begin + 1;
+            while (end < list.size() && tiers[end] == tiers[begin]) end++;
+            if (end - begin >= factor) return new ArrayList<>(list.subList(begin, begin + factor));
+            begin = end;
+        }
+        return null;
+    }
+
+    // Merges until no tier has enough adjacent segments, including runs completed by flushes meanwhile
+    private void mergeSegments() {
+        while (true) {
+            List<Segment> toMerge;
+            File file;
+            synchronized (lock) {
+                toMerge = pickMerge(segments);
+                if (toMerge == null) {
+                    merging = false;
+                    return;
+                }
+                file = new File(directory, segmentName(nextGeneration++));
+            }
+
+            try {
+                long start = System.nanoTime();
+                writeMerged(toMerge, file);
+                Segment merged = new Segment(file);
+
+                synchronized (lock) {
+                    // Flushes only append, so the merged run is still adjacent and is replaced in place
+                    List<Segment> updated = new ArrayList<>(segments);
+                    int at = updated.indexOf(toMerge.get(0));
+                    updated.removeAll(toMerge);
+                    updated.add(at, merged);
+                    writeManifest(updated);
+                    segments = Collections.unmodifiableList(updated);
+                    postingsWritten += merged.postingCount;
+                }
+
+                // Readers that still hold the old mapping keep working after the unlink
+                for (Segment segment : toMerge) {
+                    if (!segment.file.delete()) {
+                        Log.w(TAG, "Could not delete merged segment " + segment.file);
+                    }
+                }
+                Log.d(TAG, "Merged " + toMerge.size() + " segments into " + file.getName() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                Log.e(TAG, "Segment merge failed: " + e.getMessage());
+                if (file.exists() && !file.delete()) {
+                    Log.w(TAG, "Could not delete partial segment " + file);
+                }
+                synchronized (lock) {
+                    merging = false;
+                }
+                return;
+            }
+        }
+    }
+
+    // K-way merge over the sorted term tables; postings keep segment (= insertion) order
+    private static void writeMerged(List<Segment> sources, File file) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> {
+            int c = compareBytes(a.term, b.term);
+            return c != 0 ? c : Integer.compare(a.order, b.order);
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            Cursor cursor = new Cursor(sources.get(i), i);
+            if (cursor.advance()) queue.add(cursor);
+        }
+
+        SegmentWriter writer = new SegmentWriter(file);
+        while (!queue.isEmpty()) {
+            byte[] term = queue.peek().term;
+            writer.startTerm(term);
+            while (!queue.isEmpty() && compareBytes(queue.peek().term, term) == 0) {
+                Cursor cursor = queue.poll();
+                cursor.segment.copyPostings(cursor.index, writer);
+                if (cursor.advance()) queue.add(cursor);
+            }
+        }
+        writer.finish();
+    }
+
+    private void writeManifest(List<Segment> list) throws IOException {
+        File tmp = new File(directory, MANIFEST + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            for (Segment segment : list) {
+                writer.write(segment.file.getName());
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(directory, MANIFEST))) {
+            throw new IOException("Cannot write index manifest in " + directory);
+        }
+    }
+
+    private static String segmentName(int generation) {
+        return String.format(Locale.ROOT, "seg_%08d.idx", generation);
+    }
+
+    private static String logName(int generation) {
+        return String.format(Locale.ROOT, "seg_%08d%s", generation, LOG_SUFFIX);
+    }
+
+    private static int generationOf(String name) {
+        try {
+            return Integer.parseInt(name.substring(4, name.indexOf('.')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return a.length - b.length;
+    }
+
+    private static class Cursor {
+        final Segment segment;
+        final int order;
+        int index = -1;
+        byte[] term;
+
+        Cursor(Segment segment, int order) {
+            this.segment = segment;
+            this.order = order;
+        }
+
+        boolean advance() {
+            if (++index >= segment.termCount) return false;
+            term = segment.termAt(index);
+            return true;
+        }
+    }
+
+    private static class SegmentWriter {
+        private final FileOutputStream file;
+        private final DataOutputStream postings;
+        private final ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        private final DataOutputStream terms = new DataOutputStream(termBytes);
+        private final List<Integer> termOffsets = new ArrayList<>();
+        private int postingCount = 0;
+        private int termStart = -1;
+        private byte[] currentTerm;
+
+        SegmentWriter(File file) throws IOException {
+            this.file = new FileOutputStream(file);
+            postings = new DataOutputStream(new BufferedOutputStream(this.file, 1 << 16));
+        }
+
+        void startTerm(byte[] term) throws IOException {
+            endTerm();
+            currentTerm = term;
+            termStart = postingCount;
+        }
+
+        void writePosting(int imageId, int left, int top, int right, int bottom) throws IOException {
+            postings.writeInt(imageId);
+            postings.writeInt(left);
+            postings.writeInt(top);
+            postings.writeInt(right);
+            postings.writeInt(bottom);
+            postingCount++;
+        }
+
+        private void endTerm() throws IOException {
+            if (currentTerm == null) return;
+            termOffsets.add(terms.size());
+            terms.writeShort(currentTerm.length);
+            terms.write(currentTerm);
+            terms.writeInt(termStart);
+            terms.writeInt(postingCount - termStart);
+            currentTerm = null;
+        }
+
+        void finish() throws IOException {
+            endTerm();
+            long termsStart = (long) postingCount * POSTING_BYTES;
+            long tableOffset = termsStart + terms.size();
+            if (tableOffset + 4L * termOffsets.size() + FOOTER_BYTES > Integer.MAX_VALUE) {
+                postings.close();
+                throw new IOException("Index segment exceeds 2 GB");
+            }
+            termBytes.writeTo(postings);
+            for (int offset : termOffsets) {
+                postings.writeInt((int) termsStart + offset);
+            }
+            postings.writeInt(postingCount);
+            postings.writeInt(termOffsets.size());
+            postings.writeInt((int) tableOffset);
+            postings.writeInt(SEGMENT_MAGIC);
+            // The manifest may name this segment right after, so it has to reach the disk first
+            postings.flush();
+            file.getFD().sync();
+            postings.close();
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        final int postingCount;
+        final int termCount;
+        final int tableOffset;
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int footer = buffer.capacity() - FOOTER_BYTES;
+            if (footer < 0 || buffer.getInt(footer + 12) != SEGMENT_MAGIC) {
+                throw new IOException("Not an index segment: " + file);
+            }
+            postingCount = buffer.getInt(footer);
+            termCount = buffer.getInt(footer + 4);
+            tableOffset = buffer.getInt(footer + 8);
+        }
+
+        private int entryOffset(int i) {
+            return buffer.getInt(tableOffset + 4 * i);
+        }
+
+        byte[] termAt(int i) {
+            int offset = entryOffset(i);
+            byte[] term = new byte[buffer.getShort(offset) & 0xFFFF];
+            for (int k = 0; k < term.length; k++) {
+                term[k] = buffer.get(offset + 2 + k);
+            }
+            return term;
+        }
+
+        // Compares without copying the term out of the mapping
+        int compareTerm(int i, byte[] key) {
+            int offset = entryOffset(i);
+            int len = buffer.getShort(offset) & 0xFFFF;
+            int n = Math.min(len, key.length);
+            for (int k = 0; k < n; k++) {
+                int c = (buffer.get(offset + 2 + k) & 0xFF) - (key[k] & 0xFF);
+                if (c != 0) return c;
+            }
+            return len - key.length;
+        }
+
+        boolean termStartsWith(int i, byte[] prefix) {
+            int offset = entryOffset(i);
+            int len = buffer.getShort(offset) & 0xFFFF;
+            if (len < prefix.length) return false;
+            for (int k = 0; k < prefix.length; k++) {
+                if (buffer.get(offset + 2 + k) != prefix[k]) return false;
+            }
+            return true;
+        }
+
+        // First term >= key
+        int lowerBound(byte[] key) {
+            int lo = 0, hi = termCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareTerm(mid, key) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        void readPostings(int i, Set<Posting> out) {
+            int offset = entryOffset(i);
+            int postingsAt = offset + 2 + (buffer.getShort(offset) & 0xFFFF);
+            int first = buffer.getInt(postingsAt);
+            int count = buffer.getInt(postingsAt + 4);
+            for (int p = first; p < first + count; p++) {
+                int at = p * POSTING_BYTES;
+                out.add(new Posting(buffer.getInt(at),
+                        new Rect(buffer.getInt(at + 4), buffer.getInt(at + 8), buffer.getInt(at + 12), buffer.getInt(at + 16))));
+            }
+        }
+
+        void copyPostings(int i, SegmentWriter writer) throws IOException {
+            int offset = entryOffset(i);
+            int postingsAt = offset + 2 + (buffer.getShort(offset) & 0xFFFF);
+            int first = buffer.getInt(postingsAt);
+            int count = buffer.getInt(postingsAt + 4);
+            for (int p = first; p < first + count; p++) {
+                int at = p * POSTING_BYTES;
+                writer.writePosting(buffer.getInt(at), buffer.getInt(at + 4), buffer.getInt(at + 8), buffer.getInt(at + 12), buffer.getInt(at + 16));
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+
+public class TextLine {
+    public Rect box;
+    public String text;
+
+    public TextLine(Rect box, String text) {
+        this.box = box;
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return "TextLine(" + box.left + "," + box.top + "," + box.right + "," + box.bottom + ",'" + text + "')";
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the detector over overlapping tiles of a large image so small text keeps its
+ * native resolution, then merges the per-tile boxes back into image coordinates. Parallel
+ * tiles run on a pool owned by the detector for its whole life (cascade refinement calls
+ * detect once per region); close() stops it.
+ */
+public class TiledDetector {
+    private static final String TAG = "TiledDetector";
+
+    public static class Config {
+        public int tileWidth = 0;          // 0 = detector input width
+        public int tileHeight = 0;         // 0 = detector input height
+        public int overlap = 64;           // pixels shared by neighbouring tiles
+        public int concurrency = 1;        // tiles run in parallel, capped by interpreter count
+        public float textThreshold = 0.7f;
+        public float linkThreshold = 0.4f;
+        public int minArea = 10;
+        public float mergeThreshold = 0.5f; // intersection / smaller box area
+        public int seamTolerance = 4;       // a box this close to an interior tile edge was cut by it
+        public int seamGap = 8;             // largest gap between the two halves of a cut line
+    }
+
+    private final BlockingQueue<Interpreter> interpreters;
+    private final int poolSize;
+    private final Config config;
+    private final int tileW;
+    private final int tileH;
+    private final ExecutorService workers;
+    private volatile int workerLimit;
+
+    public TiledDetector(List<Interpreter> detectors, Config config) {
+        if (detectors.isEmpty()) {
+            throw new IllegalArgumentException("TiledDetector needs at least one detector interpreter.");
+        }
+        this.interpreters = new ArrayBlockingQueue<>(detectors.size(), false, detectors);
+        this.poolSize = Math.max(1, Math.min(config.concurrency, detectors.size()));
+        this.config = config;
+
+        int[] inputSize = detectorInputSize(detectors.get(0).getInputTensor(0).shape());
+        this.tileW = config.tileWidth > 0 ? config.tileWidth : inputSize[1];
+        this.tileH = config.tileHeight > 0 ? config.tileHeight : inputSize[0];
+        if (config.overlap < 0 || config.overlap >= Math.min(tileW, tileH)) {
+            throw new IllegalArgumentException("Tile overlap " + config.overlap + " must be smaller than tile " + tileW + "x" + tileH);
+        }
+        this.workers = poolSize > 1 ? Executors.newFixedThreadPool(poolSize) : null;
+        this.workerLimit = poolSize;
+    }
+
+    // Stops the tile workers; the interpreters belong to the caller
+    public void close() {
+        if (workers != null) workers.shutdownNow();
+    }
+
+    // Returns {H, W} using the same layout rule as preprocessDetectorImage
+    static int[] detectorInputSize(int[] inputShape) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Error: Detector input shape not 4D: " + Arrays.toString(inputShape));
+        }
+        if (inputShape[3] == 1 || inputShape[3] == 3) {
+            return new int[]{inputShape[1], inputShape[2]};
+        } else if (inputShape[1] == 1 || inputShape[1] == 3) {
+            return new int[]{inputShape[2], inputShape[3]};
+        }
+        throw new IllegalArgumentException("Cannot infer detector layout from shape " + Arrays.toString(inputShape));
+    }
+
+    // Tiling only pays off when the image is clearly larger than a single tile
+    public boolean shouldTile(ImagePlanes image) {
+        return image.width > tileW * 3 / 2 || image.height > tileH * 3 / 2;
+    }
+
+    // Tiles that can be in flight at once
+    public int getConcurrency() {
+        return poolSize;
+    }
+
+    /**
+     * Caps the tiles in flight for the following detect calls, e.g. to what the memory budget
+     * can hold detector tensors for; clamped to 1..getConcurrency(). Returns the cap in effect.
+     */
+    public int setWorkerLimit(int limit) {
+        workerLimit = Math.max(1, Math.min(limit, poolSize));
+        return workerLimit;
+    }
+
+    public int getTileWidth() {
+        return tileW;
+    }
+
+    public int getTileHeight() {
+        return tileH;
+    }
+
+    /**
+     * Tiles not started once the budget says stop are skipped, so a cancelled or expired run
+     * returns the boxes of the tiles done so far. capture, if not null, records the tile passes
+     * for PipelineReplay.
+     */
+    public List<Rect> detect(ImagePlanes image, RunBudget budget, PipelineCapture capture) throws Exception {
+        return detect(image, new Rect(0, 0, image.width, image.height), budget, capture);
+    }
+
+    // Tiles only the given region of the image; boxes are still returned in image coordinates
+    public List<Rect> detect(ImagePlanes image, Rect region, RunBudget budget, PipelineCapture capture) throws Exception {
+        List<Rect> tiles = computeTiles(region.width(), region.height(), tileW, tileH, config.overlap);
+        for (Rect tile : tiles) {
+            tile.offset(region.left, region.top);
+        }
+        Log.d(TAG, "Detecting " + region.width() + "x" + region.height() + " in " + tiles.size() + " tiles of " + tileW + "x" + tileH + ", workers=" + Math.min(workerLimit, tiles.size()));
+
+        int active = Math.min(workerLimit, tiles.size());
+        List<List<Rect>> perTile = new ArrayList<>(Collections.nCopies(tiles.size(), (List<Rect>) null));
+        if (active == 1) {
+            for (int i = 0; i < tiles.size(); i++) {
+                perTile.set(i, detectTile(image, tiles.get(i), budget, capture));
+            }
+        } else {
+            // Each runner claims the next tile, so at most active tiles hold detector tensors at once
+            AtomicInteger nextTile = new AtomicInteger();
+            List<Future<Void>> futures = new ArrayList<>(active);
+            try {
+                for (int r = 0; r < active; r++) {
+                    futures.add(workers.submit(() -> {
+                        for (int i = nextTile.getAndIncrement(); i < tiles.size(); i = nextTile.getAndIncrement()) {
+                            perTile.set(i, detectTile(image, tiles.get(i), budget, capture));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } finally {
+                // After a failed tile the other runners stop claiming tiles; running tiles are not
+                // interrupted, so they still hand their interpreter back to the pool
+                nextTile.set(tiles.size());
+                for (Future<Void> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        List<Rect> all = new ArrayList<>();
+        List<Integer> cut = new ArrayList<>();
+        int skipped = 0;
+        for (int i = 0; i < tiles.size(); i++) {
+            if (perTile.get(i) == null) {
+                skipped++;
+                continue;
+            }
+            for (Rect box : perTile.get(i)) {
+                all.add(box);
+                cut.add(seamCuts(box, tiles.get(i), region, config.seamTolerance));
+            }
+        }
+        List<Rect> merged = mergeBoxes(all, cut, config.mergeThreshold, config.seamGap, Math.max(tileW, tileH) / 4);
+        Log.d(TAG, "Tiles produced " + all.size() + " boxes, " + merged.size() + " after de-duplication");
+        if (skipped > 0) {
+            Log.w(TAG, "Budget stopped detection, " + skipped + " of " + tiles.size() + " tiles skipped");
+        }
+        return merged;
+    }
+
+    // Single pass over the whole image at detector resolution, on one pooled interpreter
+    public List<Rect> detectSinglePass(ImagePlanes image, float textThreshold, float linkThreshold, PipelineCapture capture) throws Exception {
+        Interpreter detector = interpreters.take();
+        try {
+            return OcrEngine.runDetector(detector, image, new Rect(0, 0, image.width, image.height), textThreshold, linkThreshold, config.minArea, capture);
+        } finally {
+            interpreters.put(detector);
+        }
+    }
+
+    static int countTiles(int width, int height, int tileW, int tileH, int overlap) {
+        return tileStarts(width, tileW, tileW - overlap).length * tileStarts(height, tileH, tileH - overlap).length;
+    }
+
+    public int countTiles(Rect region) {
+        return countTiles(region.width(), region.height(), tileW, tileH, config.overlap);
+    }
+
+    // Tiles read their pixels straight from the shared planes; tile workers only ever read them. Null when skipped
+    private List<Rect> detectTile(ImagePlanes image, Rect tile, RunBudget budget, PipelineCapture capture) throws Exception {
+        if (budget.shouldStop()) return null;
+        // Each interpreter is owned by exactly one tile at a time
+        Interpreter detector = interpreters.take();
+        List<Rect> boxes;
+        try {
+            boxes = OcrEngine.runDetector(detector, image, tile, config.textThreshold, config.linkThreshold, config.minArea, capture);
+        } finally {
+            interpreters.put(detector);
+        }
+        for (Rect box : boxes) {
+            box.offset(tile.left, tile.top);
+        }
+        return boxes;
+    }
+
+    static List<Rect> computeTiles(int imageW, int imageH, int tileW, int tileH, int overlap) {
+        int[] xs = tileStarts(imageW, tileW, tileW - overlap);
+        int[] ys = tileStarts(imageH, tileH, tileH - overlap);
+        List<Rect> tiles = new ArrayList<>(xs.length * ys.length);
+        for (int y : ys) {
+            for (int x : xs) {
+                tiles.add(new Rect(x, y, Math.min(imageW, x + tileW), Math.min(imageH, y + tileH)));
+            }
+        }
+        return tiles;
+    }
+
+    // Evenly stepped starts, with the last tile pulled back so it ends on the image edge
+    private static int[] tileStarts(int length, int tile, int step) {
+        if (length <= tile) {
+            return new int[]{0};
+        }
+        int count = (int) Math.ceil((length - tile) / (float) step) + 1;
+        int[] starts = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = Math.min(i * step, length - tile);
+        }
+        return starts;
+    }
+
+    static final int CUT_X = 1;   // ends at a vertical seam, continues left or right
+    static final int CUT_Y = 2;   // ends at a horizontal seam, continues up or down
+
+    // A box ending at a tile edge that another tile continues past was probably cut by the seam
+    static int seamCuts(Rect box, Rect tile, Rect region, int tolerance) {
+        int cuts = 0;
+        if ((tile.left > region.left && box.left - tile.left <= tolerance)
+                || (tile.right < region.right && tile.right - box.right <= tolerance)) {
+            cuts |= CUT_X;
+        }
+        if ((tile.top > region.top && box.top - tile.top <= tolerance)
+                || (tile.bottom < region.bottom && tile.bottom - box.bottom <= tolerance)) {
+            cuts |= CUT_Y;
+        }
+        return cuts;
+    }
+
+    static List<Rect> mergeBoxes(List<Rect> boxes, float threshold, int cellSize) {
+        return mergeBoxes(boxes, null, threshold, 0, cellSize);
+    }
+
+    // Rect front end of mergeCoords
+    static List<Rect> mergeBoxes(List<Rect> boxes, List<Integer> cut, float threshold, int seamGap, int cellSize) {
+        List<int[]> coords = new ArrayList<>(boxes.size());
+        for (Rect box : boxes) {
+            coords.add(new int[]{box.left, box.top, box.right, box.bottom});
+        }
+        List<int[]> merged = mergeCoords(coords, cut, threshold, seamGap, cellSize);
+        List<Rect> rects = new ArrayList<>(merged.size());
+        for (int[] box : merged) {
+            rects.add(new Rect(box[0], box[1], box[2], box[3]));
+        }
+        return rects;
+    }
+
+    /**
+     * Merges {left, top, right, bottom} boxes that overlap by more than {@code threshold} of the
+     * smaller box. A box with {@link #CUT_X} in {@code cut} is also joined with a box continuing
+     * it sideways (at most {@code seamGap} pixels apart, sharing at least half the smaller
+     * height); one with {@link #CUT_Y} with a box it overlaps vertically that shares half the
+     * smaller width. Two halves of a long line only share the tile overlap band, so the overlap
+     * ratio alone would keep them apart. Kept boxes are indexed in a uniform grid so each
+     * candidate is only compared with its neighbours; passes repeat until nothing merges, so a
+     * line spanning several tiles ends up as one box.
+     */
+    static List<int[]> mergeCoords(List<int[]> boxes, List<Integer> cut, float threshold, int seamGap, int cellSize) {
+        int cell = Math.max(1, cellSize);
+        List<int[]> current = new ArrayList<>(boxes.size());
+        List<Integer> currentCut = new ArrayList<>(boxes.size());
+        for (int i = 0; i < boxes.size(); i++) {
+            current.add(boxes.get(i).clone());
+            currentCut.add(cut != null ? cut.get(i) : 0);
+        }
+
+        while (true) {
+            // Largest first, so fragments are absorbed into the most complete detection
+            Integer[] order = new Integer[current.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            List<int[]> source = current;
+            Arrays.sort(order, (a, b) -> Long.compare(area(source.get(b)), area(source.get(a))));
+
+            List<int[]> kept = new ArrayList<>();
+            List<Integer> keptCut = new ArrayList<>();
+            Map<Long, List<Integer>> grid = new HashMap<>();
+
+            for (int i : order) {
+                int[] box = current.get(i);
+                int boxCut = currentCut.get(i);
+                int[] probe = {box[0] - seamGap, box[1] - seamGap, box[2] + seamGap, box[3] + seamGap};
+                int match = -1;
+                for (long key : cellKeys(probe, cell)) {
+                    List<Integer> bucket = grid.get(key);
+                    if (bucket == null) continue;
+                    for (int idx : bucket) {
+                        int[] other = kept.get(idx);
+                        if (overlapRatio(other, box) > threshold
+                                || continuesAcrossSeam(other, box, boxCut | keptCut.get(idx), seamGap)) {
+                            match = idx;
+                            break;
+                        }
+                    }
+                    if (match >= 0) break;
+                }
+
+                if (match >= 0) {
+                    int[] target = kept.get(match);
+                    target[0] = Math.min(target[0], box[0]);
+                    target[1] = Math.min(target[1], box[1]);
+                    target[2] = Math.max(target[2], box[2]);
+                    target[3] = Math.max(target[3], box[3]);
+                    keptCut.set(match, keptCut.get(match) | boxCut);
+                    addToGrid(grid, target, match, cell);
+                } else {
+                    kept.add(box.clone());
+                    keptCut.add(boxCut);
+                    addToGrid(grid, box, kept.size() - 1, cell);
+                }
+            }
+
+            if (kept.size() == current.size()) return kept;
+            current = kept;
+            currentCut = keptCut;
+        }
+    }
+
+    // Stacked lines never overlap, so only a vertically cut pair may be joined across rows
+    private static boolean continuesAcrossSeam(int[] a, int[] b, int cuts, int seamGap) {
+        if (cuts == 0) return false;
+        int gapX = Math.max(a[0], b[0]) - Math.min(a[2], b[2]);
+        int gapY = Math.max(a[1], b[1]) - Math.min(a[3], b[3]);
+        int minH = Math.min(a[3] - a[1], b[3] - b[1]);
+        int minW = Math.min(a[2] - a[0], b[2] - b[0]);
+        boolean sameRow = (cuts & CUT_X) != 0 && gapX <= seamGap && minH > 0 && -gapY * 2 >= minH;
+        boolean sameColumn = (cuts & CUT_Y) != 0 && gapY < 0 && minW > 0 && -gapX * 2 >= minW;
+        return sameRow || sameColumn;
+    }
+
+    private static void addToGrid(Map<Long, List<Integer>> grid, int[] box, int idx, int cell) {
+        for (long key : cellKeys(box, cell)) {
+            List<Integer> bucket = grid.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                grid.put(key, bucket);
+            }
+            if (!bucket.contains(idx)) bucket.add(idx);
+        }
+    }
+
+    private static List<Long> cellKeys(int[] box, int cell) {
+        int cx1 = Math.floorDiv(box[0], cell);
+        int cy1 = Math.floorDiv(box[1], cell);
+        int cx2 = Math.floorDiv(Math.max(box[0], box[2] - 1), cell);
+        int cy2 = Math.floorDiv(Math.max(box[1], box[3] - 1), cell);
+        List<Long> keys = new ArrayList<>((cx2 - cx1 + 1) * (cy2 - cy1 + 1));
+        for (int cy = cy1; cy <= cy2; cy++) {
+            for (int cx = cx1; cx <= cx2; cx++) {
+                keys.add(((long) cy << 32) | (cx & 0xFFFFFFFFL));
+            }
+        }
+        return keys;
+    }
+
+    private static float overlapRatio(int[] a, int[] b) {
+        int iw = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        int ih = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (iw <= 0 || ih <= 0) return 0f;
+        long smaller = Math.min(area(a), area(b));
+        return smaller > 0 ? (iw * (long) ih) / (float) smaller : 0f;
+    }
+
+    private static long area(int[] box) {
+        return (long) (box[2] - box[0]) * (box[3] - box[1]);
+    }
+}
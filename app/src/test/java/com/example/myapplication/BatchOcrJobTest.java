@@ -0,0 +1,124 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cancelling and resuming a batch delivers every image to the result sink exactly once.
+ */
+public class BatchOcrJobTest {
+
+    private static final int IMAGES = 60;
+
+    // Decodes every input to its own placeholder bitmap, remembering which input it stands for
+    private static class FakeJob extends BatchOcrJob {
+        final Map<Bitmap, Integer> decoded = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        FakeJob(List<String> ids, File output, Config config) {
+            super(ids, null, output, config);
+        }
+
+        @Override
+        Bitmap decode(String id) throws IOException {
+            Bitmap bitmap = newBitmap();
+            decoded.put(bitmap, Integer.parseInt(id.substring("image".length())));
+            return bitmap;
+        }
+    }
+
+    private static class RecordingSink implements BatchOcrJob.ResultSink {
+        final List<Integer> delivered = new ArrayList<>();
+        int synced;
+
+        @Override
+        public void onResult(int index, String id, List<TextLine> lines) {
+            delivered.add(index);
+        }
+
+        @Override
+        public void sync() {
+            synced = delivered.size();
+        }
+    }
+
+    @Test
+    public void resumeAfterCancelDeliversEveryImageOnce() throws Exception {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            File output = new File(dir, "out.bin");
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < IMAGES; i++) ids.add("image" + i);
+            BatchOcrJob.Config config = new BatchOcrJob.Config();
+            config.checkpointInterval = 25;
+            RecordingSink sink = new RecordingSink();
+
+            // Cancelled in the middle of the second checkpoint window
+            FakeJob first = new FakeJob(ids, output, config);
+            first.setResultSink(sink);
+            first.run(bitmap -> {
+                int index = first.decoded.get(bitmap);
+                if (index == 37) first.cancel();
+                return lines(index);
+            }, null);
+            assertEquals(range(0, 25), sink.delivered);
+            assertEquals(25, sink.synced);
+
+            FakeJob resumed = new FakeJob(ids, output, config);
+            resumed.setResultSink(sink);
+            resumed.run(bitmap -> lines(resumed.decoded.get(bitmap)), null);
+
+            assertEquals(range(0, IMAGES), sink.delivered);
+            assertEquals(IMAGES, sink.synced);
+            assertFalse(new File(output.getPath() + ".ckpt").exists());
+
+            // The output file agrees with the sink: one record per image
+            List<Integer> recorded = new ArrayList<>();
+            BatchOcrJob.readRecords(output, (index, id, lines) -> recorded.add(index));
+            assertEquals(range(0, IMAGES), recorded);
+        } finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+    private static List<TextLine> lines(int index) {
+        List<TextLine> lines = new ArrayList<>();
+        lines.add(new TextLine(new Rect(0, 0, 10, 10), "line" + index));
+        return lines;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; i++) values.add(i);
+        return values;
+    }
+
+    // Bitmap has no public constructor and the unit-test android.jar returns null from
+    // createBitmap; the job never reads pixels here, so an unconstructed instance stands in
+    private static Bitmap newBitmap() throws IOException {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method allocate = unsafeClass.getMethod("allocateInstance", Class.class);
+            return (Bitmap) allocate.invoke(field.get(null), Bitmap.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+}
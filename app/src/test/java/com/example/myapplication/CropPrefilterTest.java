@@ -0,0 +1,118 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prefilter decisions on synthetic pages: rules, blank boxes and smudges are rejected for the
+ * right reason, text lines and single narrow glyphs are kept.
+ */
+public class CropPrefilterTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int INK = 0xFF101010;
+
+    private static int[] page(int w, int h) {
+        int[] pixels = new int[w * h];
+        Arrays.fill(pixels, WHITE);
+        return pixels;
+    }
+
+    private static void fill(int[] pixels, int w, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) pixels[y * w + x] = color;
+        }
+    }
+
+    // Block letters E, H, T, L in a 12 x 20 cell with 3 px strokes
+    private static void glyph(int[] pixels, int w, char c, int x, int y) {
+        switch (c) {
+            case 'E':
+                fill(pixels, w, x, y, x + 3, y + 20, INK);
+                fill(pixels, w, x, y, x + 12, y + 3, INK);
+                fill(pixels, w, x, y + 9, x + 10, y + 12, INK);
+                fill(pixels, w, x, y + 17, x + 12, y + 20, INK);
+                break;
+            case 'H':
+                fill(pixels, w, x, y, x + 3, y + 20, INK);
+                fill(pixels, w, x + 9, y, x + 12, y + 20, INK);
+                fill(pixels, w, x, y + 9, x + 12, y + 12, INK);
+                break;
+            case 'T':
+                fill(pixels, w, x, y, x + 12, y + 3, INK);
+                fill(pixels, w, x + 5, y, x + 8, y + 20, INK);
+                break;
+            default:
+                fill(pixels, w, x, y, x + 3, y + 20, INK);
+                fill(pixels, w, x, y + 17, x + 12, y + 20, INK);
+                break;
+        }
+    }
+
+    @Test
+    public void rejectsRulesWhateverTheBoxThickness() {
+        int w = 400, h = 100;
+        int[] pixels = page(w, h);
+        fill(pixels, w, 20, 50, 380, 52, INK);   // 2 px table rule
+        fill(pixels, w, 200, 5, 201, 95, INK);   // 1 px vertical hairline
+        ImagePlanes planes = ImagePlanes.fromArgb(pixels, w, h);
+        CropPrefilter filter = new CropPrefilter(new CropPrefilter.Config());
+
+        assertFalse(filter.accept(planes, 20, 50, 380, 52));     // tight box
+        assertFalse(filter.accept(planes, 16, 44, 384, 58));     // padded by the detector
+        assertFalse(filter.accept(planes, 196, 5, 205, 95));     // vertical, padded
+        CropPrefilter.Stats stats = filter.getStats();
+        assertEquals(1, stats.small);
+        assertEquals(2, stats.rule);
+        assertEquals(3, stats.skipped());
+    }
+
+    @Test
+    public void rejectsBlankAndSmudgedBoxes() {
+        int w = 300, h = 100;
+        int[] pixels = page(w, h);
+        // Soft shadow: luminance varies a lot across the box but never in a sharp step
+        for (int y = 20; y < 80; y++) {
+            for (int x = 150; x < 290; x++) {
+                int v = 255 - Math.min(200, (x - 150) + (y - 20));
+                pixels[y * w + x] = 0xFF000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        ImagePlanes planes = ImagePlanes.fromArgb(pixels, w, h);
+        CropPrefilter filter = new CropPrefilter(new CropPrefilter.Config());
+
+        assertFalse(filter.accept(planes, 10, 10, 120, 40));
+        assertFalse(filter.accept(planes, 150, 20, 290, 80));
+        assertFalse(filter.accept(planes, 10, 10, 13, 13));
+        CropPrefilter.Stats stats = filter.getStats();
+        assertEquals(1, stats.variance);
+        assertEquals(1, stats.edges);
+        assertEquals(1, stats.small);
+    }
+
+    @Test
+    public void keepsTextLinesAndNarrowGlyphs() {
+        int w = 400, h = 60;
+        int[] pixels = page(w, h);
+        String text = "THE HELL THE TELL HEEL";
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != ' ') glyph(pixels, w, text.charAt(i), 10 + i * 16, 20);
+        }
+        // Underlined too: the rule inside a text box does not make it a rule
+        fill(pixels, w, 10, 43, 10 + text.length() * 16, 45, INK);
+        fill(pixels, w, 380, 20, 383, 40, INK);  // a lone "I"
+        ImagePlanes planes = ImagePlanes.fromArgb(pixels, w, h);
+        CropPrefilter filter = new CropPrefilter(new CropPrefilter.Config());
+
+        assertTrue(filter.accept(planes, 6, 16, 14 + text.length() * 16, 48));
+        assertTrue(filter.accept(planes, 6, 16, 14 + 3 * 16, 42));
+        assertTrue(filter.accept(planes, 376, 16, 387, 44));
+        assertEquals(0, filter.getStats().skipped());
+
+        filter.beginRun();
+        assertEquals(0, filter.getStats().checked);
+    }
+}
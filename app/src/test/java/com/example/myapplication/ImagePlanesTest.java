@@ -0,0 +1,122 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Luminance weights, ARGB round-trips and the bilinear / half-level resampling of ImagePlanes.
+ */
+public class ImagePlanesTest {
+
+    private static int[] randomArgb(int w, int h, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[w * h];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    @Test
+    public void luminance_keepsGrayAndUsesBt601Weights() {
+        for (int v = 0; v < 256; v++) {
+            assertEquals(v, ImagePlanes.luminance(v, v, v));
+        }
+        assertEquals(77, ImagePlanes.luminance(255, 0, 0));
+        assertEquals(149, ImagePlanes.luminance(0, 255, 0));
+        assertEquals(29, ImagePlanes.luminance(0, 0, 255));
+    }
+
+    @Test
+    public void fromArgb_roundTripsAndFillsLuma() {
+        int[] pixels = randomArgb(31, 17, 1);
+        ImagePlanes planes = ImagePlanes.fromArgb(pixels, 31, 17);
+        assertArrayEquals(pixels, planes.toArgb());
+        for (int y = 0; y < 17; y++) {
+            for (int x = 0; x < 31; x++) {
+                int p = pixels[y * 31 + x];
+                assertEquals(ImagePlanes.luminance((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF), planes.getLuma(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void resample_sameSizeRegionIsExactCrop() {
+        ImagePlanes planes = ImagePlanes.fromArgb(randomArgb(40, 30, 2), 40, 30);
+        ImagePlanes rgb = planes.resample(5, 7, 20, 11, 20, 11, true);
+        ImagePlanes gray = planes.resample(5, 7, 20, 11, 20, 11, false);
+        for (int y = 0; y < 11; y++) {
+            for (int x = 0; x < 20; x++) {
+                int src = (y + 7) * 40 + x + 5;
+                int dst = y * 20 + x;
+                assertEquals(planes.r[src], rgb.r[dst]);
+                assertEquals(planes.g[src], rgb.g[dst]);
+                assertEquals(planes.b[src], rgb.b[dst]);
+                assertEquals(planes.luma[src], gray.luma[dst]);
+            }
+        }
+    }
+
+    @Test
+    public void resample_halvingIsTheBoxAverage() {
+        ImagePlanes planes = ImagePlanes.fromArgb(randomArgb(64, 48, 3), 64, 48);
+        ImagePlanes gray = planes.resample(0, 0, 64, 48, 32, 24, false);
+        for (int y = 0; y < 24; y++) {
+            for (int x = 0; x < 32; x++) {
+                int sum = planes.getLuma(2 * x, 2 * y) + planes.getLuma(2 * x + 1, 2 * y)
+                        + planes.getLuma(2 * x, 2 * y + 1) + planes.getLuma(2 * x + 1, 2 * y + 1);
+                assertEquals((sum + 2) >> 2, gray.getLuma(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void resample_keepsUniformImagesUniform() {
+        int[] pixels = new int[97 * 83];
+        Arrays.fill(pixels, 0xFF336699);
+        ImagePlanes planes = ImagePlanes.fromArgb(pixels, 97, 83);
+        int[][] sizes = {{40, 29}, {13, 70}, {200, 150}, {1, 1}};
+        for (int[] size : sizes) {
+            ImagePlanes rgb = planes.resample(3, 2, 90, 80, size[0], size[1], true);
+            for (int pixel : rgb.toArgb()) {
+                assertEquals(0xFF336699, pixel);
+            }
+            ImagePlanes gray = planes.resample(3, 2, 90, 80, size[0], size[1], false);
+            for (int i = 0; i < gray.luma.length; i++) {
+                assertEquals(planes.getLuma(0, 0), gray.luma[i] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void resample_producesOnlyTheRequestedPlanes() {
+        ImagePlanes planes = ImagePlanes.fromArgb(randomArgb(21, 15, 4), 21, 15);
+        assertEquals(21L * 15 * 4, planes.byteCount());
+        assertEquals(10L * 7 * 4, planes.halfByteCount());
+
+        ImagePlanes gray = planes.resample(0, 0, 21, 15, 8, 6, false);
+        assertFalse(gray.hasRgb());
+        assertNotNull(gray.luma);
+        assertEquals(8L * 6, gray.byteCount());
+        // A luminance-only copy comes out as gray
+        int pixel = gray.toArgb()[0];
+        assertEquals(pixel & 0xFF, (pixel >> 8) & 0xFF);
+        assertEquals(pixel & 0xFF, (pixel >> 16) & 0xFF);
+
+        ImagePlanes rgb = planes.resample(0, 0, 21, 15, 8, 6, true);
+        assertTrue(rgb.hasRgb());
+        assertNull(rgb.luma);
+        assertEquals(8L * 6 * 3, rgb.byteCount());
+
+        try {
+            gray.resample(0, 0, 8, 6, 4, 3, true);
+            fail("resampled RGB from a luminance-only copy");
+        } catch (IllegalStateException expected) {
+            // no RGB planes
+        }
+    }
+}
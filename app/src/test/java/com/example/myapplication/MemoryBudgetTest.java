@@ -0,0 +1,72 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The decisions callers take from the budget: decode resolution, prefetch window, tile workers.
+ */
+public class MemoryBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void tightBudgetDecodesAtLowerResolution() {
+        // A 4000x3000 photo takes about 46MB as ARGB_8888
+        assertEquals(1, new MemoryBudget(200 * MB, 0.5f).decodeSampleSize(4000, 3000));
+        assertEquals(2, new MemoryBudget(40 * MB, 0.5f).decodeSampleSize(4000, 3000));
+        assertEquals(4, new MemoryBudget(8 * MB, 0.5f).decodeSampleSize(4000, 3000));
+    }
+
+    @Test
+    public void decodeShrinksAsTheHeadroomIsUsed() {
+        MemoryBudget budget = new MemoryBudget(100 * MB, 0.5f);
+        assertEquals(1, budget.decodeSampleSize(4000, 3000));
+        budget.acquire(MemoryBudget.PLANES, 80 * MB);
+        assertEquals(4, budget.decodeSampleSize(4000, 3000));
+        budget.release(MemoryBudget.PLANES, 80 * MB);
+        assertEquals(1, budget.decodeSampleSize(4000, 3000));
+    }
+
+    @Test
+    public void decodeNeverGoesBelowTheMinimumSide() {
+        assertEquals(4, MemoryBudget.sampleSizeFor(1200, 1024, 0));
+        assertEquals(1, MemoryBudget.sampleSizeFor(300, 300, 0));
+    }
+
+    @Test
+    public void tightBudgetPrefetchesFewerImages() {
+        long image = 10 * MB;
+        assertEquals(4, new MemoryBudget(100 * MB, 0.5f).prefetchWindow(4, image));
+        assertEquals(2, new MemoryBudget(25 * MB, 0.5f).prefetchWindow(4, image));
+        assertEquals(1, new MemoryBudget(5 * MB, 0.5f).prefetchWindow(4, image));
+    }
+
+    @Test
+    public void prefetchedImagesDoNotShrinkTheirOwnWindow() {
+        MemoryBudget budget = new MemoryBudget(45 * MB, 0.5f);
+        budget.acquire(MemoryBudget.PREFETCHED, 30 * MB);
+        assertEquals(4, budget.prefetchWindow(4, 10 * MB));
+        budget.acquire(MemoryBudget.PLANES, 20 * MB);
+        assertEquals(2, budget.prefetchWindow(4, 10 * MB));
+    }
+
+    @Test
+    public void unknownImageSizeOnlyShrinksWhenOverBudget() {
+        MemoryBudget budget = new MemoryBudget(10 * MB, 0.5f);
+        assertEquals(4, budget.prefetchWindow(4, 0));
+        budget.acquire(MemoryBudget.DECODED, 11 * MB);
+        assertEquals(1, budget.prefetchWindow(4, 0));
+    }
+
+    @Test
+    public void tightBudgetRunsFewerTileWorkers() {
+        MemoryBudget budget = new MemoryBudget(100 * MB, 0.5f);
+        assertEquals(4, budget.affordableWorkers(4, 10 * MB));
+        budget.acquire(MemoryBudget.PLANES, 75 * MB);
+        assertEquals(2, budget.affordableWorkers(4, 10 * MB));
+        budget.acquire(MemoryBudget.RECOGNIZER, 20 * MB);
+        assertEquals(1, budget.affordableWorkers(4, 10 * MB));
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ordering of model version directory names.
+ */
+public class ModelSetTest {
+
+    private static void assertBefore(String older, String newer) {
+        assertTrue(older + " < " + newer, ModelSet.compareVersions(older, newer) < 0);
+        assertTrue(newer + " > " + older, ModelSet.compareVersions(newer, older) > 0);
+    }
+
+    @Test
+    public void numbersCompareByValue() {
+        assertBefore("v9", "v10");
+        assertBefore("1.2", "1.10");
+        assertBefore("1.9.9", "1.10.0");
+        assertBefore("v2", "v10");
+        assertBefore("v99999999999999999999", "v100000000000000000000");
+    }
+
+    @Test
+    public void textAndLengthBreakTies() {
+        assertBefore("1.2", "1.2.1");
+        assertBefore("v1-alpha", "v1-beta");
+        // Equal by value, so plain string order keeps the sort total
+        assertBefore("v01", "v1");
+        assertEquals(0, ModelSet.compareVersions("v10", "v10"));
+    }
+
+    @Test
+    public void sortsVersionDirectoriesOldestFirst() {
+        List<String> names = new ArrayList<>(Arrays.asList("v10", "v9", "v1.10", "v1.2", "v100"));
+        Collections.shuffle(names);
+        names.sort(ModelSet::compareVersions);
+        assertEquals(Arrays.asList("v1.2", "v1.10", "v9", "v10", "v100"), names);
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scheduling contract of the OCR worker. Each test first parks the worker on a blocking task so
+ * everything submitted afterwards is still queued when it is inspected.
+ */
+public class OcrExecutorTest {
+
+    private static CountDownLatch block(OcrExecutor executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(null, OcrExecutor.Priority.INTERACTIVE, 0, budget -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void submitLatest_keepsOnlyTheNewestWaitingTask() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<Integer>> frames = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                int frame = i;
+                frames.add(executor.submitLatest("frame", OcrExecutor.Priority.FRAME, 0, budget -> {
+                    ran.add(frame);
+                    return frame;
+                }));
+            }
+            assertEquals(1, executor.getQueueLength());
+            release.countDown();
+
+            assertEquals(4, (int) await(frames.get(4)));
+            for (int i = 0; i < 4; i++) assertTrue(frames.get(i).isCancelled());
+            assertEquals(Collections.singletonList(4), ran);
+            assertEquals(4, executor.getSupersededCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void submitLatest_leavesTheRunningTaskAlone() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> running = executor.submitLatest("frame", OcrExecutor.Priority.FRAME, 0, budget -> {
+                started.countDown();
+                release.await();
+                return budget.isCancelled() ? "cancelled" : "first";
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<String> next = executor.submitLatest("frame", OcrExecutor.Priority.FRAME, 0, budget -> "second");
+            release.countDown();
+
+            assertEquals("first", await(running));
+            assertEquals("second", await(next));
+            assertEquals(0, executor.getSupersededCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void frames_runBehindInteractiveAndAheadOfBackground() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CompletableFuture<?> background = executor.submit(null, OcrExecutor.Priority.BACKGROUND, 0, budget -> order.add("background"));
+            CompletableFuture<?> frame = executor.submitLatest("frame", OcrExecutor.Priority.FRAME, 0, budget -> order.add("frame"));
+            CompletableFuture<?> pick = executor.submit(null, OcrExecutor.Priority.INTERACTIVE, 0, budget -> order.add("pick"));
+            release.countDown();
+            await(background);
+            await(frame);
+            await(pick);
+            assertEquals(Arrays.asList("pick", "frame", "background"), order);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    @Test
+    public void queuedTasks_runByPriorityThenInSubmitOrder() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<?>> all = new ArrayList<>();
+            all.add(executor.submit(null, OcrExecutor.Priority.BACKGROUND, 0, budget -> order.add("batch1")));
+            all.add(executor.submit(null, OcrExecutor.Priority.INTERACTIVE, 0, budget -> order.add("pick1")));
+            all.add(executor.submit(null, OcrExecutor.Priority.BACKGROUND, 0, budget -> order.add("batch2")));
+            all.add(executor.submit(null, OcrExecutor.Priority.INTERACTIVE, 0, budget -> order.add("pick2")));
+            release.countDown();
+            for (CompletableFuture<?> future : all) await(future);
+            assertEquals(Arrays.asList("pick1", "pick2", "batch1", "batch2"), order);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sameKey_sharesOneComputation() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            AtomicInteger runs = new AtomicInteger();
+            CompletableFuture<Integer> first = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> runs.incrementAndGet());
+            CompletableFuture<Integer> second = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> runs.incrementAndGet());
+            assertNotSame(first, second);
+            assertEquals(1, executor.getQueueLength());
+            release.countDown();
+
+            assertEquals(1, (int) await(first));
+            assertEquals(1, (int) await(second));
+            assertEquals(1, runs.get());
+            assertEquals(1, executor.getCoalescedCount());
+
+            // Once done, the key starts a new computation
+            assertEquals(2, (int) await(executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> runs.incrementAndGet())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedComputation_isCancelledOnlyAfterEveryCaller() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch firstCancelled = new CountDownLatch(1);
+            CountDownLatch secondCancelled = new CountDownLatch(1);
+            CompletableFuture<String> first = executor.submit("image", OcrExecutor.Priority.INTERACTIVE, 0, budget -> {
+                started.countDown();
+                firstCancelled.await();
+                boolean afterOne = budget.isCancelled();
+                secondCancelled.await();
+                return afterOne ? "cancelled early" : budget.isCancelled() ? "cancelled" : "kept";
+            });
+            CompletableFuture<String> second = executor.submit("image", OcrExecutor.Priority.INTERACTIVE, 0, budget -> "unused");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // The shared run reports back through a third caller that never cancels
+            CompletableFuture<String> observer = executor.submit("image", OcrExecutor.Priority.INTERACTIVE, 0, budget -> "unused");
+            first.cancel(false);
+            firstCancelled.countDown();
+            second.cancel(false);
+            secondCancelled.countDown();
+            assertEquals("kept", await(observer));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedComputation_cancelledByTheLastCallerNeverRuns() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            AtomicInteger runs = new AtomicInteger();
+            CompletableFuture<Integer> first = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> runs.incrementAndGet());
+            CompletableFuture<Integer> second = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> runs.incrementAndGet());
+            first.cancel(false);
+            assertEquals(1, executor.getQueueLength());
+            second.cancel(false);
+            assertEquals(0, executor.getQueueLength());
+            release.countDown();
+
+            // A later task runs, so the cancelled one had its chance and did not take it
+            assertEquals("after", await(executor.submit(null, OcrExecutor.Priority.BACKGROUND, 0, budget -> "after")));
+            assertEquals(0, runs.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void promotedBackgroundTask_getsTheInteractiveBudget() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch release = block(executor);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CompletableFuture<?> other = executor.submit(null, OcrExecutor.Priority.BACKGROUND, 0, budget -> order.add("other"));
+            CompletableFuture<Boolean> batch = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> {
+                order.add("image");
+                return budget.hasDeadline();
+            });
+            CompletableFuture<Boolean> pick = executor.submit("image", OcrExecutor.Priority.INTERACTIVE, 5000, budget -> false);
+            release.countDown();
+
+            assertTrue(await(pick));
+            assertTrue(await(batch));
+            await(other);
+            assertEquals(Arrays.asList("image", "other"), order);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void promotingARunningTask_startsItsDeadline() throws Exception {
+        OcrExecutor executor = new OcrExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Boolean> batch = executor.submit("image", OcrExecutor.Priority.BACKGROUND, 0, budget -> {
+                started.countDown();
+                long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (!budget.shouldStop() && System.nanoTime() < giveUp) {
+                    Thread.sleep(1);
+                }
+                return budget.isExpired();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> pick = executor.submit("image", OcrExecutor.Priority.INTERACTIVE, 50, budget -> false);
+
+            assertTrue(await(pick));
+            assertTrue(await(batch));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
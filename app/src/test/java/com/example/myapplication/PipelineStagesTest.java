@@ -0,0 +1,109 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The striped detector fill used by OcrEngine must produce exactly the bytes of a single
+ * sequential pass, whatever the stripe height, layout and input type.
+ */
+public class PipelineStagesTest {
+
+    private static ImagePlanes randomPlanes(int w, int h, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[w * h];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return ImagePlanes.fromArgb(pixels, w, h);
+    }
+
+    private static void assertStripedMatches(int channels, boolean nchw, DataType dtype, float scale, int zeroPoint,
+                                             int stripeRows) throws Exception {
+        ImagePlanes planes = randomPlanes(97, 83, 7);
+        byte[] lut = QuantizedOps.buildInputLut(dtype, scale, zeroPoint);
+        int bytes = planes.width * planes.height * channels * (dtype == DataType.FLOAT32 ? 4 : 1);
+
+        ByteBuffer sequential = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        PipelineStages.fillDetectorRows(sequential, planes, 0, planes.height, channels, nchw, dtype, scale, zeroPoint, lut);
+
+        ByteBuffer striped = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        PipelineStages.fillDetectorRowsStriped(striped, planes, stripeRows, channels, nchw, dtype, scale, zeroPoint, lut);
+
+        byte[] expected = new byte[bytes];
+        byte[] actual = new byte[bytes];
+        sequential.get(expected);
+        striped.get(actual);
+        assertArrayEquals(dtype + " channels=" + channels + " nchw=" + nchw + " stripe=" + stripeRows, expected, actual);
+    }
+
+    // The LUT path must write what quantizing each pixel through writeToBuffer writes
+    private static void assertLutMatchesQuantizing(int channels, boolean nchw, DataType dtype, float scale, int zeroPoint) {
+        ImagePlanes planes = randomPlanes(61, 29, 11);
+        int bytes = planes.width * planes.height * channels;
+        ByteBuffer quantizing = ByteBuffer.allocateDirect(bytes);
+        PipelineStages.fillDetectorRows(quantizing, planes, 0, planes.height, channels, nchw, dtype, scale, zeroPoint, null);
+        ByteBuffer lookedUp = ByteBuffer.allocateDirect(bytes);
+        PipelineStages.fillDetectorRows(lookedUp, planes, 0, planes.height, channels, nchw, dtype, scale, zeroPoint,
+                QuantizedOps.buildInputLut(dtype, scale, zeroPoint));
+
+        byte[] expected = new byte[bytes];
+        byte[] actual = new byte[bytes];
+        quantizing.get(expected);
+        lookedUp.get(actual);
+        assertArrayEquals(dtype + " channels=" + channels + " nchw=" + nchw + " scale=" + scale, expected, actual);
+    }
+
+    @Test
+    public void lutFill_matchesQuantizingFill() {
+        for (int channels : new int[]{1, 3}) {
+            assertLutMatchesQuantizing(channels, false, DataType.UINT8, 1f / 255f, 0);
+            assertLutMatchesQuantizing(channels, true, DataType.UINT8, 0.0078125f, 3);
+            assertLutMatchesQuantizing(channels, false, DataType.INT8, 1f / 255f, -128);
+            assertLutMatchesQuantizing(channels, true, DataType.INT8, 0.02f, -5);
+        }
+    }
+
+    @Test
+    public void grayFill_readsTheLut() {
+        ImagePlanes planes = randomPlanes(23, 19, 5);
+        byte[] marker = new byte[256];
+        for (int p = 0; p < 256; p++) marker[p] = (byte) (255 - p);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(planes.width * planes.height);
+        PipelineStages.fillDetectorRows(buffer, planes, 0, planes.height, 1, false, DataType.UINT8, 1f / 255f, 0, marker);
+        for (int i = 0; i < planes.luma.length; i++) {
+            assertEquals(marker[planes.luma[i] & 0xFF], buffer.get(i));
+        }
+    }
+
+    @Test
+    public void floatRgb_matchesSequential() throws Exception {
+        for (int stripe : new int[]{1, 7, 32, 83, 200}) {
+            assertStripedMatches(3, false, DataType.FLOAT32, 1f, 0, stripe);
+            assertStripedMatches(3, true, DataType.FLOAT32, 1f, 0, stripe);
+        }
+    }
+
+    @Test
+    public void floatGray_matchesSequential() throws Exception {
+        assertStripedMatches(1, false, DataType.FLOAT32, 1f, 0, 32);
+        assertStripedMatches(1, false, DataType.FLOAT32, 1f, 0, 7);
+    }
+
+    @Test
+    public void quantized_matchesSequential() throws Exception {
+        for (int stripe : new int[]{7, 32}) {
+            assertStripedMatches(3, false, DataType.UINT8, 1f / 255f, 0, stripe);
+            assertStripedMatches(3, true, DataType.UINT8, 1f / 255f, 0, stripe);
+            assertStripedMatches(3, false, DataType.INT8, 1f / 255f, -128, stripe);
+            assertStripedMatches(1, false, DataType.UINT8, 0.0078125f, 3, stripe);
+            assertStripedMatches(1, false, DataType.INT8, 0.0078125f, -1, stripe);
+        }
+    }
+}
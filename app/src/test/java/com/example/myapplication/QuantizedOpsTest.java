@@ -0,0 +1,91 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * The integer thresholds of QuantizedOps must give the same text/link mask as dequantizing the
+ * detector output and running the float sigmoid path.
+ */
+public class QuantizedOpsTest {
+
+    private static final float[] THRESHOLDS = {0.05f, 0.4f, 0.5f, 0.7f, 0.95f};
+
+    private static void assertMatchesFloatPath(DataType dtype, float scale, int zeroPoint) {
+        Tensor.QuantizationParams quant = new Tensor.QuantizationParams(scale, zeroPoint);
+        int min = dtype == DataType.UINT8 ? 0 : -128;
+
+        // One pixel per (score, link) pair, so every quantized value meets every other on the other channel
+        int[] shape = {1, 256, 256, 2};
+        ByteBuffer quantized = ByteBuffer.allocateDirect(256 * 256 * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer dequantized = ByteBuffer.allocateDirect(256 * 256 * 2 * 4).order(ByteOrder.nativeOrder());
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                int at = (y * 256 + x) * 2;
+                int score = min + y;
+                int link = min + x;
+                quantized.put(at, (byte) score);
+                quantized.put(at + 1, (byte) link);
+                dequantized.putFloat(at * 4, scale * (score - zeroPoint));
+                dequantized.putFloat((at + 1) * 4, scale * (link - zeroPoint));
+            }
+        }
+
+        for (float text : THRESHOLDS) {
+            for (float link : THRESHOLDS) {
+                byte[][] expected = PipelineStages.thresholdDetectorOutput(dequantized, shape, DataType.FLOAT32, null, text, link);
+                byte[][] actual = PipelineStages.thresholdDetectorOutput(quantized, shape, dtype, quant, text, link);
+                for (int y = 0; y < 256; y++) {
+                    assertArrayEquals(dtype + " scale=" + scale + " zp=" + zeroPoint + " text=" + text + " link=" + link
+                            + " score=" + (min + y), expected[y], actual[y]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sigmoidThreshold_isLargestValueAtOrBelowThreshold() {
+        Tensor.QuantizationParams quant = new Tensor.QuantizationParams(0.1f, 128);
+        for (float threshold : THRESHOLDS) {
+            int limit = QuantizedOps.sigmoidThreshold(threshold, quant);
+            assertTrue(1.0 / (1.0 + Math.exp(-0.1 * (limit - 128))) <= threshold);
+            assertTrue(1.0 / (1.0 + Math.exp(-0.1 * (limit + 1 - 128))) > threshold);
+        }
+    }
+
+    @Test
+    public void uint8_matchesFloatPath() {
+        assertMatchesFloatPath(DataType.UINT8, 0.1f, 128);
+        assertMatchesFloatPath(DataType.UINT8, 0.0625f, 0);
+        assertMatchesFloatPath(DataType.UINT8, 0.03f, 200);
+    }
+
+    @Test
+    public void int8_matchesFloatPath() {
+        assertMatchesFloatPath(DataType.INT8, 0.1f, 0);
+        assertMatchesFloatPath(DataType.INT8, 0.05f, -10);
+        assertMatchesFloatPath(DataType.INT8, 0.0625f, 100);
+    }
+
+    @Test
+    public void inputLut_matchesWriteToBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        for (DataType dtype : new DataType[]{DataType.UINT8, DataType.INT8}) {
+            int zeroPoint = dtype == DataType.UINT8 ? 0 : -128;
+            for (float scale : new float[]{1f / 255f, 0.0078125f, 0.02f}) {
+                byte[] lut = QuantizedOps.buildInputLut(dtype, scale, zeroPoint);
+                for (int p = 0; p < 256; p++) {
+                    PipelineStages.writeToBuffer(buffer, 0, p / 255.0f, dtype, scale, zeroPoint);
+                    assertEquals(dtype + " scale=" + scale + " p=" + p, buffer.get(0), lut[p]);
+                }
+            }
+        }
+        assertNull(QuantizedOps.buildInputLut(DataType.FLOAT32, 1f, 0));
+    }
+}
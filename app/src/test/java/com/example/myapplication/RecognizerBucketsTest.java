@@ -0,0 +1,69 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Splitting over-wide crops into overlapping bucket chunks and joining their CTC paths.
+ */
+public class RecognizerBucketsTest {
+
+    private static final List<String> LABELS = Arrays.asList("-", "a", "b", "c", "l");
+
+    @Test
+    public void chunksFitTheBucketAndKeepRangesTileTheCrop() {
+        for (int naturalW : new int[]{1025, 1100, 2048, 3000, 5000}) {
+            List<int[]> chunks = RecognizerBuckets.chunks(naturalW, 1024, 32);
+            assertTrue(chunks.size() >= 2);
+            int covered = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                int[] c = chunks.get(i);
+                assertTrue("chunk width " + (c[1] - c[0]), c[1] - c[0] <= 1024);
+                assertEquals(covered, c[2]);
+                assertTrue(c[0] <= c[2] && c[2] < c[3] && c[3] <= c[1]);
+                if (i > 0) assertEquals(32, chunks.get(i - 1)[1] - c[0]);
+                covered = c[3];
+            }
+            assertEquals(naturalW, covered);
+        }
+    }
+
+    @Test
+    public void cropThatFitsIsOneChunk() {
+        List<int[]> chunks = RecognizerBuckets.chunks(800, 1024, 32);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new int[]{0, 800, 0, 800}, chunks.get(0));
+    }
+
+    @Test
+    public void joinedChunksDecodeLikeOnePass() {
+        // Two columns per output step: "ab", a doubled "ll" split by a blank, then "c", repeated
+        int naturalW = 600;
+        int[] columns = new int[naturalW];
+        int[] pattern = {1, 1, 0, 2, 2, 2, 0, 4, 4, 0, 4, 0, 3, 0};
+        for (int x = 0; x < naturalW; x++) columns[x] = pattern[(x / 2) % pattern.length];
+        int[] onePass = new int[naturalW / 2];
+        for (int t = 0; t < onePass.length; t++) onePass[t] = columns[2 * t];
+        String whole = PipelineStages.collapseCTCPath(onePass, onePass.length, LABELS, 0);
+
+        int bucketW = 128;
+        int[] joined = new int[naturalW];
+        int length = 0;
+        for (int[] chunk : RecognizerBuckets.chunks(naturalW, bucketW, 32)) {
+            // The chunk as the bucket sees it: its columns, then blank padding
+            int[] path = new int[bucketW / 2];
+            for (int t = 0; t < path.length; t++) {
+                int x = chunk[0] + 2 * t;
+                path[t] = x < chunk[1] ? columns[x] : 0;
+            }
+            length = RecognizerBuckets.keepSteps(path, bucketW, chunk[2] - chunk[0], chunk[3] - chunk[0], joined, length);
+        }
+        assertEquals(onePass.length, length);
+        assertEquals(whole, PipelineStages.collapseCTCPath(joined, length, LABELS, 0));
+        assertTrue(whole.startsWith("abllcabllc"));
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.myapplication;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Add / flush / merge / reopen round-trips. Rect is a stub in local tests (its fields stay 0),
+ * so these check which images come back and not the boxes.
+ */
+public class TextIndexTest {
+
+    private static List<TextLine> lines(String... texts) {
+        List<TextLine> lines = new ArrayList<>();
+        for (String text : texts) {
+            lines.add(new TextLine(new Rect(0, 0, 10, 10), text));
+        }
+        return lines;
+    }
+
+    private static List<Integer> imageIds(List<TextIndex.Posting> postings) {
+        List<Integer> ids = new ArrayList<>();
+        for (TextIndex.Posting posting : postings) {
+            if (!ids.contains(posting.imageId)) ids.add(posting.imageId);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+
+    @Test
+    public void search_findsPendingAndFlushedPostings() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        try (TextIndex index = new TextIndex(dir, new TextIndex.Config())) {
+            index.add(1, lines("Hello world"));
+            assertEquals(Arrays.asList(1), imageIds(index.search("hello")));
+
+            index.flush();
+            index.add(2, lines("hello, THERE"));
+            assertEquals(Arrays.asList(1, 2), imageIds(index.search("Hello")));
+            assertEquals(Arrays.asList(2), imageIds(index.search("there")));
+            assertTrue(index.search("missing").isEmpty());
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void searchPrefix_spansSegmentsAndRespectsLimit() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        try (TextIndex index = new TextIndex(dir, new TextIndex.Config())) {
+            index.add(1, lines("invoice 2024"));
+            index.flush();
+            index.add(2, lines("invoices"));
+            index.flush();
+            index.add(3, lines("inventory", "total"));
+
+            assertEquals(Arrays.asList(1, 2, 3), imageIds(index.searchPrefix("inv", 10)));
+            assertEquals(Arrays.asList(1, 2), imageIds(index.searchPrefix("invoice", 10)));
+            assertEquals(2, index.searchPrefix("inv", 2).size());
+            assertTrue(index.searchPrefix("x", 10).isEmpty());
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void mergedSegments_surviveReopen() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        try {
+            TextIndex.Config config = new TextIndex.Config();
+            config.mergeFactor = 2;
+            int flushes = 6;
+            try (TextIndex index = new TextIndex(dir, config)) {
+                for (int i = 0; i < flushes; i++) {
+                    index.add(i, lines("common term" + i));
+                    index.flush();
+                }
+            }
+
+            String[] segments = dir.list((d, name) -> name.endsWith(".idx"));
+            assertNotNull(segments);
+            assertTrue("segments were not merged: " + Arrays.toString(segments), segments.length < flushes);
+
+            try (TextIndex reopened = new TextIndex(dir, config)) {
+                assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), imageIds(reopened.search("common")));
+                for (int i = 0; i < flushes; i++) {
+                    assertEquals(Collections.singletonList(i), imageIds(reopened.search("term" + i)));
+                }
+                assertEquals(flushes, reopened.searchPrefix("term", 100).size());
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void tieredMerge_boundsSegmentsAndRewrites() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        try {
+            TextIndex.Config config = new TextIndex.Config();
+            config.mergeFactor = 4;
+            int flushes = 300;
+            int termsPerFlush = 10;
+            long postingsWritten;
+            int segmentCount;
+            try (TextIndex index = new TextIndex(dir, config)) {
+                for (int i = 0; i < flushes; i++) {
+                    StringBuilder text = new StringBuilder();
+                    for (int t = 0; t < termsPerFlush; t++) text.append("w").append(i).append('x').append(t).append(' ');
+                    index.add(i, lines(text.toString()));
+                    index.flush();
+                }
+                index.close();
+                postingsWritten = index.getPostingsWritten();
+                segmentCount = index.getSegmentCount();
+            }
+
+            // Each tier holds fewer than mergeFactor segments, and a posting is rewritten once per tier
+            long total = (long) flushes * termsPerFlush;
+            int tiers = 1;
+            for (long n = total; n >= config.mergeFactor; n /= config.mergeFactor) tiers++;
+            assertTrue("segments: " + segmentCount, segmentCount <= (config.mergeFactor - 1) * tiers);
+            assertTrue("write amplification: " + postingsWritten / (double) total, postingsWritten <= total * tiers);
+
+            try (TextIndex reopened = new TextIndex(dir, config)) {
+                assertEquals(segmentCount, reopened.getSegmentCount());
+                assertEquals(Arrays.asList(0), imageIds(reopened.search("w0x0")));
+                assertEquals(Arrays.asList(299), imageIds(reopened.search("w299x9")));
+                assertEquals(flushes, imageIds(reopened.searchPrefix("w", (int) total)).size());
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void tieredMerge_absorbsShortFlushes() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        try {
+            TextIndex.Config config = new TextIndex.Config();
+            config.mergeFactor = 4;
+            int total = 0;
+            try (TextIndex index = new TextIndex(dir, config)) {
+                // Short flushes in front of long ones must not be left behind in their own tier
+                for (int i = 0; i < 200; i++) {
+                    int terms = i % 7 == 0 ? 40 : 1 + i % 3;
+                    StringBuilder text = new StringBuilder();
+                    for (int t = 0; t < terms; t++) text.append("w").append(i).append('x').append(t).append(' ');
+                    index.add(i, lines(text.toString()));
+                    index.flush();
+                    total += terms;
+                }
+                index.close();
+
+                int tiers = 1;
+                for (long n = total; n >= config.mergeFactor; n /= config.mergeFactor) tiers++;
+                assertTrue("segments: " + index.getSegmentCount(), index.getSegmentCount() <= (config.mergeFactor - 1) * tiers);
+                assertEquals(200, imageIds(index.searchPrefix("w", total)).size());
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void sync_makesPostingsDurableWithoutASegment() throws IOException {
+        File dir = Files.createTempDirectory("textindex").toFile();
+        File crashed = Files.createTempDirectory("textindex").toFile();
+        try {
+            try (TextIndex index = new TextIndex(dir, new TextIndex.Config())) {
+                index.add(1, lines("durable words"));
+                index.sync();
+                index.add(2, lines("lost"));
+
+                // What a crash right now would leave on disk
+                for (File file : dir.listFiles()) {
+                    Files.copy(file.toPath(), new File(crashed, file.getName()).toPath());
+                }
+                assertEquals(0, index.getSegmentCount());
+            }
+
+            try (TextIndex recovered = new TextIndex(crashed, new TextIndex.Config())) {
+                assertEquals(0, recovered.getSegmentCount());
+                assertEquals(Arrays.asList(1), imageIds(recovered.search("durable")));
+                assertTrue(recovered.search("lost").isEmpty());
+                // The replayed log is appended to, then flushed into one segment
+                recovered.add(3, lines("durable again"));
+            }
+            try (TextIndex reopened = new TextIndex(crashed, new TextIndex.Config())) {
+                assertEquals(1, reopened.getSegmentCount());
+                assertEquals(Arrays.asList(1, 3), imageIds(reopened.search("durable")));
+                assertEquals(1, reopened.search("words").size());
+            }
+            String[] logs = crashed.list((d, name) -> name.endsWith(".log"));
+            assertEquals(0, logs.length);
+        } finally {
+            deleteRecursively(dir);
+            deleteRecursively(crashed);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Seam joining and de-duplication of per-tile boxes, on {left, top, right, bottom} arrays.
+ */
+public class TiledDetectorTest {
+
+    private static final int X = TiledDetector.CUT_X;
+    private static final int CELL = 128;
+
+    private static List<int[]> merge(List<int[]> boxes, List<Integer> cut) {
+        return TiledDetector.mergeCoords(boxes, cut, 0.5f, 8, CELL);
+    }
+
+    @Test
+    public void halvesCutByAVerticalSeamJoin() {
+        List<int[]> halves = Arrays.asList(new int[]{100, 50, 520, 80}, new int[]{505, 52, 900, 81});
+
+        List<int[]> joined = merge(halves, Arrays.asList(X, X));
+        assertEquals(1, joined.size());
+        assertArrayEquals(new int[]{100, 50, 900, 81}, joined.get(0));
+
+        // Without the seam flags they only share the overlap band, which is not a duplicate
+        assertEquals(2, merge(halves, Arrays.asList(0, 0)).size());
+    }
+
+    @Test
+    public void stackedLinesCutByTheSameSeamStaySeparate() {
+        List<int[]> lines = Arrays.asList(
+                new int[]{100, 50, 520, 80}, new int[]{100, 90, 520, 120},
+                new int[]{505, 51, 900, 80}, new int[]{505, 91, 900, 121});
+
+        List<int[]> merged = merge(lines, Arrays.asList(X, X, X, X));
+        assertEquals(2, merged.size());
+        merged.sort((a, b) -> Integer.compare(a[1], b[1]));
+        assertArrayEquals(new int[]{100, 50, 900, 80}, merged.get(0));
+        assertArrayEquals(new int[]{100, 90, 900, 121}, merged.get(1));
+    }
+
+    @Test
+    public void lineAcrossThreeTilesBecomesOneBox() {
+        List<int[]> pieces = Arrays.asList(
+                new int[]{968, 200, 1400, 231}, new int[]{0, 200, 520, 230}, new int[]{456, 201, 1032, 229});
+
+        List<int[]> merged = merge(pieces, Arrays.asList(X, X, X));
+        assertEquals(1, merged.size());
+        assertArrayEquals(new int[]{0, 200, 1400, 231}, merged.get(0));
+    }
+
+    @Test
+    public void duplicatesFromTheOverlapBandMerge() {
+        List<int[]> boxes = Arrays.asList(new int[]{480, 300, 540, 330}, new int[]{482, 301, 541, 331}, new int[]{600, 300, 660, 330});
+
+        List<int[]> merged = TiledDetector.mergeCoords(boxes, null, 0.5f, 0, CELL);
+        assertEquals(2, merged.size());
+        merged.sort((a, b) -> Integer.compare(a[0], b[0]));
+        assertArrayEquals(new int[]{480, 300, 541, 331}, merged.get(0));
+        assertArrayEquals(new int[]{600, 300, 660, 330}, merged.get(1));
+        // The input is left untouched
+        assertArrayEquals(new int[]{480, 300, 540, 330}, boxes.get(0));
+    }
+}